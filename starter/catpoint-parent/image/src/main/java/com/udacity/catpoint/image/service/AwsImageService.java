@@ -20,7 +20,12 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 /**
@@ -43,6 +48,14 @@ public class AwsImageService implements ImageService{
     //aws recommendation is to maintain only a single instance of client objects
     private static RekognitionClient rekognitionClient;
 
+    //requests of a batch run side by side; the client is thread safe and pools its connections
+    private static final int BATCH_REQUESTS = 8;
+    private static final ExecutorService batchExecutor = Executors.newFixedThreadPool(BATCH_REQUESTS, runnable -> {
+        Thread thread = new Thread(runnable, "rekognition-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public AwsImageService() {
         Properties props = new Properties();
         try (InputStream is = getClass().getClassLoader().getResourceAsStream("config.properties")) {
@@ -84,6 +97,19 @@ public class AwsImageService implements ImageService{
         return response.labels().stream().filter(l -> l.name().toLowerCase().contains("cat")).findFirst().isPresent();
     }
 
+    /**
+     * Encodes and sends the images of the batch in parallel, up to 8 requests in flight at once,
+     * so the batch takes about as long as its slowest round trips rather than the sum of them all.
+     */
+    @Override
+    public List<Boolean> imageContainsCat(List<BufferedImage> images, float confidenceThreshhold) {
+        List<CompletableFuture<Boolean>> requests = new ArrayList<>(images.size());
+        for (BufferedImage image : images) {
+            requests.add(CompletableFuture.supplyAsync(() -> imageContainsCat(image, confidenceThreshhold), batchExecutor));
+        }
+        return requests.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
     private void logLabelsForFun(DetectLabelsResponse response) {
         log.info(response.labels().stream()
                 .map(label -> String.format("%s(%.1f%%)", label.name(), label.confidence()))
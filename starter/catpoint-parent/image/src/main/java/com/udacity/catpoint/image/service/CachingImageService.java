@@ -0,0 +1,370 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * Image service that remembers what another image service said about recent frames. Cameras send
+ * long runs of near-identical frames, so each frame is reduced to a 64 bit difference hash (dHash)
+ * and a frame whose hash is within a few bits of a remembered one gets the remembered answer
+ * without calling the wrapped service.
+ * <p>
+ * The cache keeps the most recently used {@code capacity} hashes, and forgets a result
+ * {@code timeToLive} after the wrapped service produced it, so a cat walking into a static scene
+ * is noticed within that time even if the hash hardly moves. Results are only reused for the same
+ * confidence threshold. A null image, as sent when no picture has been chosen yet, is passed on to
+ * the wrapped service as it is and never cached.
+ * <p>
+ * Near matches are found through an index rather than by comparing against every remembered
+ * hash. The 64 bits are split into {@code maxDistance + 1} bands; two hashes within
+ * {@code maxDistance} bits cannot differ in every band, so they share at least one band exactly,
+ * and only the hashes sharing a band with the frame are compared. With the default distance of 4
+ * that is five 12 or 13 bit bands. Distances above {@value #MAX_INDEXED_DISTANCE} would make the
+ * bands too narrow to narrow anything down, so those caches compare against every hash.
+ */
+public class CachingImageService implements ImageService {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_DISTANCE = 4;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofSeconds(30);
+
+    //dHash compares each of 8 columns with its right neighbour, over 8 rows
+    private static final int HASH_COLUMNS = 9;
+    private static final int HASH_ROWS = 8;
+    //pixels sampled along each side of a cell, so big frames cost no more to hash than small ones
+    private static final int CELL_SAMPLES = 8;
+    //16 bands of 4 bits; narrower bands match most hashes anyway
+    static final int MAX_INDEXED_DISTANCE = 15;
+
+    private final ImageService delegate;
+    private final int maxDistance;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoClock;
+    private final Map<Long, CachedResult> entries;
+    //per band, the remembered results by the value of their hash in that band; null when not indexed
+    private final List<Map<Long, Set<CachedResult>>> bands;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static class CachedResult {
+        private final long hash;
+        private final float confidenceThreshhold;
+        private final boolean containsCat;
+        private final long createdNanos;
+
+        private CachedResult(long hash, float confidenceThreshhold, boolean containsCat, long createdNanos) {
+            this.hash = hash;
+            this.confidenceThreshhold = confidenceThreshhold;
+            this.containsCat = containsCat;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    public CachingImageService(ImageService delegate) {
+        this(delegate, DEFAULT_CAPACITY, DEFAULT_MAX_DISTANCE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param capacity Number of frame hashes remembered
+     * @param maxDistance Number of hash bits two frames may differ in and still share a result;
+     *                    0 only reuses results for frames that hash identically
+     * @param timeToLive How long a result is reused for
+     */
+    public CachingImageService(ImageService delegate, int capacity, int maxDistance, Duration timeToLive) {
+        this(delegate, capacity, maxDistance, timeToLive, System::nanoTime);
+    }
+
+    CachingImageService(ImageService delegate, int capacity, int maxDistance, Duration timeToLive, LongSupplier nanoClock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        if (maxDistance < 0 || maxDistance > Long.SIZE) {
+            throw new IllegalArgumentException("Hamming distance must be between 0 and 64: " + maxDistance);
+        }
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("Time to live must be positive: " + timeToLive);
+        }
+        this.delegate = delegate;
+        this.maxDistance = maxDistance;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedResult> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    unindex(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (maxDistance <= MAX_INDEXED_DISTANCE) {
+            bands = new ArrayList<>(maxDistance + 1);
+            for (int band = 0; band <= maxDistance; band++) {
+                bands.add(new HashMap<>());
+            }
+        } else {
+            bands = null;
+        }
+    }
+
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        if (image == null) {
+            return delegate.imageContainsCat(image, confidenceThreshhold);
+        }
+        long hash = differenceHash(image);
+        Boolean cached = lookup(hash, confidenceThreshhold);
+        if (cached != null) {
+            return cached;
+        }
+        boolean containsCat = delegate.imageContainsCat(image, confidenceThreshhold);
+        store(hash, confidenceThreshhold, containsCat);
+        return containsCat;
+    }
+
+    /**
+     * Answers what it can from the cache and passes the misses on to the wrapped service as one
+     * smaller batch.
+     */
+    @Override
+    public List<Boolean> imageContainsCat(List<BufferedImage> images, float confidenceThreshhold) {
+        long[] hashes = new long[images.size()];
+        List<Boolean> results = new ArrayList<>(images.size());
+        List<BufferedImage> misses = new ArrayList<>();
+        for (int i = 0; i < images.size(); i++) {
+            Boolean cached = null;
+            if (images.get(i) != null) {
+                hashes[i] = differenceHash(images.get(i));
+                cached = lookup(hashes[i], confidenceThreshhold);
+            }
+            results.add(cached);
+            if (cached == null) {
+                misses.add(images.get(i));
+            }
+        }
+        if (misses.isEmpty()) {
+            return results;
+        }
+        List<Boolean> classified = delegate.imageContainsCat(misses, confidenceThreshhold);
+        for (int i = 0, miss = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                boolean containsCat = classified.get(miss++);
+                if (images.get(i) != null) {
+                    store(hashes[i], confidenceThreshhold, containsCat);
+                }
+                results.set(i, containsCat);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Hashes the frame on the calling thread, which takes microseconds, and answers a hit straight
+     * away without using the executor. Misses go to the wrapped service's own async method.
+     */
+    @Override
+    public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshhold, Executor executor) {
+        if (image == null) {
+            return delegate.imageContainsCatAsync(image, confidenceThreshhold, executor);
+        }
+        long hash = differenceHash(image);
+        Boolean cached = lookup(hash, confidenceThreshhold);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return delegate.imageContainsCatAsync(image, confidenceThreshhold, executor).thenApply(containsCat -> {
+            store(hash, confidenceThreshhold, containsCat);
+            return containsCat;
+        });
+    }
+
+    /**
+     * @return The closest live result for a hash within maxDistance bits, or null on a miss
+     */
+    synchronized Boolean lookup(long hash, float confidenceThreshhold) {
+        long now = nanoClock.getAsLong();
+        CachedResult best = entries.get(hash);
+        if (best == null || !usable(best, confidenceThreshhold, now)) {
+            best = null;
+            int bestDistance = maxDistance + 1;
+            List<CachedResult> expired = new ArrayList<>();
+            for (CachedResult entry : candidates(hash)) {
+                if (now - entry.createdNanos >= timeToLiveNanos) {
+                    expired.add(entry);
+                    continue;
+                }
+                int distance = Long.bitCount(entry.hash ^ hash);
+                if (distance < bestDistance && Float.compare(entry.confidenceThreshhold, confidenceThreshhold) == 0) {
+                    best = entry;
+                    bestDistance = distance;
+                }
+            }
+            for (CachedResult entry : expired) {
+                if (entries.remove(entry.hash, entry)) {
+                    unindex(entry);
+                }
+            }
+            if (best != null) {
+                //touch it, so frames that keep matching keep it resident
+                entries.get(best.hash);
+            }
+        }
+        if (best == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return best.containsCat;
+    }
+
+    /**
+     * @return Every remembered result that may be within maxDistance bits of the hash; a result
+     * sharing several bands with it is returned once per band
+     */
+    private Collection<CachedResult> candidates(long hash) {
+        if (bands == null) {
+            return entries.values();
+        }
+        List<CachedResult> candidates = new ArrayList<>();
+        for (int band = 0; band < bands.size(); band++) {
+            Set<CachedResult> sharing = bands.get(band).get(bandValue(hash, band));
+            if (sharing != null) {
+                candidates.addAll(sharing);
+            }
+        }
+        return candidates;
+    }
+
+    private long bandValue(long hash, int band) {
+        int from = band * Long.SIZE / bands.size();
+        int to = (band + 1) * Long.SIZE / bands.size();
+        return hash >>> from & (1L << (to - from)) - 1;
+    }
+
+    private void index(CachedResult entry) {
+        if (bands != null) {
+            for (int band = 0; band < bands.size(); band++) {
+                bands.get(band).computeIfAbsent(bandValue(entry.hash, band), value -> new HashSet<>()).add(entry);
+            }
+        }
+    }
+
+    private void unindex(CachedResult entry) {
+        if (bands != null) {
+            for (int band = 0; band < bands.size(); band++) {
+                long value = bandValue(entry.hash, band);
+                Set<CachedResult> sharing = bands.get(band).get(value);
+                sharing.remove(entry);
+                if (sharing.isEmpty()) {
+                    bands.get(band).remove(value);
+                }
+            }
+        }
+    }
+
+    private boolean usable(CachedResult entry, float confidenceThreshhold, long now) {
+        return now - entry.createdNanos < timeToLiveNanos && Float.compare(entry.confidenceThreshhold, confidenceThreshhold) == 0;
+    }
+
+    synchronized void store(long hash, float confidenceThreshhold, boolean containsCat) {
+        CachedResult entry = new CachedResult(hash, confidenceThreshhold, containsCat, nanoClock.getAsLong());
+        CachedResult replaced = entries.put(hash, entry);
+        if (replaced != null) {
+            unindex(replaced);
+        }
+        index(entry);
+    }
+
+    /**
+     * Difference hash: the image is reduced to 9x8 cells of average brightness, and bit
+     * {@code row * 8 + column} is set if a cell is brighter than the cell to its right. Small
+     * changes in noise, compression or exposure flip few bits; a change in what is in the picture
+     * flips many.
+     */
+    static long differenceHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] brightness = new int[HASH_COLUMNS * HASH_ROWS];
+        for (int row = 0; row < HASH_ROWS; row++) {
+            int top = row * height / HASH_ROWS;
+            int cellHeight = Math.max(1, (row + 1) * height / HASH_ROWS - top);
+            for (int column = 0; column < HASH_COLUMNS; column++) {
+                int left = column * width / HASH_COLUMNS;
+                int cellWidth = Math.max(1, (column + 1) * width / HASH_COLUMNS - left);
+                brightness[row * HASH_COLUMNS + column] = averageBrightness(image, left, top, cellWidth, cellHeight);
+            }
+        }
+        long hash = 0;
+        for (int row = 0; row < HASH_ROWS; row++) {
+            for (int column = 0; column < HASH_COLUMNS - 1; column++) {
+                if (brightness[row * HASH_COLUMNS + column] > brightness[row * HASH_COLUMNS + column + 1]) {
+                    hash |= 1L << (row * (HASH_COLUMNS - 1) + column);
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static int averageBrightness(BufferedImage image, int left, int top, int cellWidth, int cellHeight) {
+        int samplesX = Math.min(CELL_SAMPLES, cellWidth);
+        int samplesY = Math.min(CELL_SAMPLES, cellHeight);
+        long sum = 0;
+        for (int sy = 0; sy < samplesY; sy++) {
+            int y = Math.min(image.getHeight() - 1, top + (2 * sy + 1) * cellHeight / (2 * samplesY));
+            for (int sx = 0; sx < samplesX; sx++) {
+                int x = Math.min(image.getWidth() - 1, left + (2 * sx + 1) * cellWidth / (2 * samplesX));
+                int rgb = image.getRGB(x, y);
+                //ITU-R BT.601 luma, scaled by 1000
+                sum += ((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114;
+            }
+        }
+        return (int) (sum / (samplesX * samplesY));
+    }
+
+    /**
+     * @return Number of frames answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of frames passed on to the wrapped service
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Number of results dropped to make room, not counting expired ones
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Fraction of frames answered from the cache, 0 before the first frame
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
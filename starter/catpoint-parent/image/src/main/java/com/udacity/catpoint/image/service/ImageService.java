@@ -1,10 +1,40 @@
 package com.udacity.catpoint.image.service;
 
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface ImageService {
 
 
     public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold);
 
+    /**
+     * Classifies several images in one call, for example the latest frame of every camera on a
+     * site. The default classifies them one at a time; backends with per-call overhead should
+     * override it to share that overhead across the batch.
+     * @return One result per image, in the order of the images
+     */
+    public default List<Boolean> imageContainsCat(List<BufferedImage> images, float confidenceThreshhold) {
+        List<Boolean> results = new ArrayList<>(images.size());
+        for (BufferedImage image : images) {
+            results.add(imageContainsCat(image, confidenceThreshhold));
+        }
+        return results;
+    }
+
+    /**
+     * Classifies the image without blocking the caller. The default runs
+     * {@link #imageContainsCat(BufferedImage, float)} as a task on the executor; services with a
+     * non-blocking client of their own can override it and ignore the executor.
+     * @param executor Executor the classification runs on. If it rejects the task the
+     *                 RejectedExecutionException is thrown here, not through the future.
+     * @return Completes with the result, or exceptionally with whatever the classification threw
+     */
+    public default CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshhold, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> imageContainsCat(image, confidenceThreshhold), executor);
+    }
+
 }
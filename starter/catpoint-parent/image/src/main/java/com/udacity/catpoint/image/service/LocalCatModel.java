@@ -0,0 +1,244 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Small feed-forward network that scores how likely an image is to show a cat, for
+ * {@link LocalImageService}. The image is reduced to {@code inputWidth x inputHeight} cells of
+ * average colour, each channel normalized with a per-channel mean and scale, then passed through
+ * one ReLU hidden layer and a sigmoid output.
+ * <p>
+ * Models are stored big-endian:
+ * <pre>
+ * int    magic 'CATM', int version 1
+ * int    inputWidth, inputHeight, hiddenUnits
+ * float  mean[3], scale[3]                      red, green, blue
+ * float  hiddenWeights[hiddenUnits * inputs]   inputs = inputWidth * inputHeight * 3, row per unit
+ * float  hiddenBiases[hiddenUnits]
+ * float  outputWeights[hiddenUnits], outputBias
+ * </pre>
+ * A model is immutable and can be shared between threads; each thread scores with its own
+ * {@link Workspace}.
+ */
+public final class LocalCatModel {
+
+    public static final int MAGIC = 0x4341544D;
+    public static final int VERSION = 1;
+    //images scored together in one pass over the weights; longer batches are scored in chunks
+    public static final int BATCH_SIZE = 8;
+
+    //largest layers accepted; the hidden weights are what a corrupt header could make huge, and
+    //MAX_WEIGHTS caps them at 16 MB, far above the bundled model's 6144
+    private static final int MAX_INPUT_SIDE = 256;
+    private static final int MAX_HIDDEN_UNITS = 4096;
+    private static final int MAX_WEIGHTS = 1 << 22;
+    //pixels sampled along each side of a cell
+    private static final int CELL_SAMPLES = 4;
+
+    private final int inputWidth;
+    private final int inputHeight;
+    private final float[] mean;
+    private final float[] scale;
+    private final float[] hiddenWeights;
+    private final float[] hiddenBiases;
+    private final float[] outputWeights;
+    private final float outputBias;
+
+    /**
+     * Buffers for scoring one image, or a batch of up to {@link #BATCH_SIZE} images, allocated once
+     * and reused for every call.
+     */
+    public final class Workspace {
+        private final float[] input = new float[inputCount()];
+        private final float[] hidden = new float[hiddenBiases.length];
+        private final float[] batchInput = new float[BATCH_SIZE * inputCount()];
+        private final float[] batchOutput = new float[BATCH_SIZE];
+
+        private Workspace() {}
+    }
+
+    /**
+     * @throws IllegalArgumentException if the arrays do not match the input size and each other
+     */
+    public LocalCatModel(int inputWidth, int inputHeight, float[] mean, float[] scale, float[] hiddenWeights,
+                         float[] hiddenBiases, float[] outputWeights, float outputBias) {
+        if (inputWidth < 1 || inputHeight < 1 || inputWidth > MAX_INPUT_SIDE || inputHeight > MAX_INPUT_SIDE) {
+            throw new IllegalArgumentException("Bad model input size " + inputWidth + "x" + inputHeight);
+        }
+        if (mean.length != 3 || scale.length != 3 || hiddenBiases.length < 1 || hiddenBiases.length > MAX_HIDDEN_UNITS
+                || hiddenWeights.length > MAX_WEIGHTS
+                || outputWeights.length != hiddenBiases.length
+                || hiddenWeights.length != hiddenBiases.length * inputWidth * inputHeight * 3) {
+            throw new IllegalArgumentException("Model weights do not match its layer sizes");
+        }
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.mean = mean.clone();
+        this.scale = scale.clone();
+        this.hiddenWeights = hiddenWeights.clone();
+        this.hiddenBiases = hiddenBiases.clone();
+        this.outputWeights = outputWeights.clone();
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * @throws IOException if the stream cannot be read or does not hold a model of this version
+     */
+    public static LocalCatModel read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a cat model");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cat model version " + version);
+        }
+        int inputWidth = in.readInt();
+        int inputHeight = in.readInt();
+        int hiddenUnits = in.readInt();
+        if (inputWidth < 1 || inputHeight < 1 || inputWidth > MAX_INPUT_SIDE || inputHeight > MAX_INPUT_SIDE
+                || hiddenUnits < 1 || hiddenUnits > MAX_HIDDEN_UNITS
+                || (long) hiddenUnits * inputWidth * inputHeight * 3 > MAX_WEIGHTS) {
+            throw new IOException("Bad cat model header " + inputWidth + "x" + inputHeight + ", " + hiddenUnits + " hidden units");
+        }
+        float[] mean = readFloats(in, 3);
+        float[] scale = readFloats(in, 3);
+        float[] hiddenWeights = readFloats(in, hiddenUnits * inputWidth * inputHeight * 3);
+        float[] hiddenBiases = readFloats(in, hiddenUnits);
+        float[] outputWeights = readFloats(in, hiddenUnits);
+        float outputBias = in.readFloat();
+        return new LocalCatModel(inputWidth, inputHeight, mean, scale, hiddenWeights, hiddenBiases, outputWeights, outputBias);
+    }
+
+    private static float[] readFloats(DataInputStream in, int count) throws IOException {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readFloat();
+        }
+        return values;
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(inputWidth);
+        out.writeInt(inputHeight);
+        out.writeInt(hiddenBiases.length);
+        for (float[] values : new float[][]{mean, scale, hiddenWeights, hiddenBiases, outputWeights}) {
+            for (float value : values) {
+                out.writeFloat(value);
+            }
+        }
+        out.writeFloat(outputBias);
+        out.flush();
+    }
+
+    public Workspace newWorkspace() {
+        return new Workspace();
+    }
+
+    public int inputCount() {
+        return inputWidth * inputHeight * 3;
+    }
+
+    /**
+     * Fills {@code input} with the normalized input the model sees for the image: cells in row
+     * order, red, green and blue per cell. Exposed so models can be trained on the same features.
+     */
+    public void extractFeatures(BufferedImage image, float[] input) {
+        extractFeatures(image, input, 0);
+    }
+
+    private void extractFeatures(BufferedImage image, float[] input, int offset) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int row = 0; row < inputHeight; row++) {
+            int top = row * height / inputHeight;
+            int cellHeight = Math.max(1, (row + 1) * height / inputHeight - top);
+            int samplesY = Math.min(CELL_SAMPLES, cellHeight);
+            for (int column = 0; column < inputWidth; column++) {
+                int left = column * width / inputWidth;
+                int cellWidth = Math.max(1, (column + 1) * width / inputWidth - left);
+                int samplesX = Math.min(CELL_SAMPLES, cellWidth);
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                for (int sy = 0; sy < samplesY; sy++) {
+                    int y = Math.min(height - 1, top + (2 * sy + 1) * cellHeight / (2 * samplesY));
+                    for (int sx = 0; sx < samplesX; sx++) {
+                        int rgb = image.getRGB(Math.min(width - 1, left + (2 * sx + 1) * cellWidth / (2 * samplesX)), y);
+                        red += (rgb >> 16) & 0xff;
+                        green += (rgb >> 8) & 0xff;
+                        blue += rgb & 0xff;
+                    }
+                }
+                float samples = samplesX * samplesY * 255f;
+                int cell = offset + (row * inputWidth + column) * 3;
+                input[cell] = (red / samples - mean[0]) * scale[0];
+                input[cell + 1] = (green / samples - mean[1]) * scale[1];
+                input[cell + 2] = (blue / samples - mean[2]) * scale[2];
+            }
+        }
+    }
+
+    /**
+     * @return Probability between 0 and 1 that the image shows a cat
+     */
+    public float catProbability(BufferedImage image, Workspace workspace) {
+        float[] input = workspace.input;
+        float[] hidden = workspace.hidden;
+        extractFeatures(image, input);
+        float output = outputBias;
+        for (int unit = 0, weight = 0; unit < hidden.length; unit++) {
+            float sum = hiddenBiases[unit];
+            for (int i = 0; i < input.length; i++, weight++) {
+                sum += hiddenWeights[weight] * input[i];
+            }
+            hidden[unit] = Math.max(0f, sum);
+            output += outputWeights[unit] * hidden[unit];
+        }
+        return (float) (1 / (1 + Math.exp(-output)));
+    }
+
+    /**
+     * Scores several images at once. The features of up to {@link #BATCH_SIZE} images are laid out
+     * side by side in the workspace and each hidden unit's weights are streamed through once for
+     * them, instead of once per image.
+     * @param probabilities Receives the probability for each image, in order
+     */
+    public void catProbabilities(List<BufferedImage> images, float[] probabilities, Workspace workspace) {
+        for (int first = 0; first < images.size(); first += BATCH_SIZE) {
+            scoreChunk(images, first, Math.min(BATCH_SIZE, images.size() - first), probabilities, workspace);
+        }
+    }
+
+    private void scoreChunk(List<BufferedImage> images, int first, int count, float[] probabilities, Workspace workspace) {
+        int inputs = inputCount();
+        float[] batch = workspace.batchInput;
+        float[] outputs = workspace.batchOutput;
+        for (int b = 0; b < count; b++) {
+            extractFeatures(images.get(first + b), batch, b * inputs);
+            outputs[b] = outputBias;
+        }
+        for (int unit = 0; unit < hiddenBiases.length; unit++) {
+            int row = unit * inputs;
+            for (int b = 0, start = 0; b < count; b++, start += inputs) {
+                float sum = hiddenBiases[unit];
+                for (int i = 0; i < inputs; i++) {
+                    sum += hiddenWeights[row + i] * batch[start + i];
+                }
+                outputs[b] += outputWeights[unit] * Math.max(0f, sum);
+            }
+        }
+        for (int b = 0; b < count; b++) {
+            probabilities[first + b] = (float) (1 / (1 + Math.exp(-outputs[b])));
+        }
+    }
+}
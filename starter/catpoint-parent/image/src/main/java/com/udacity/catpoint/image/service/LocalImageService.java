@@ -0,0 +1,129 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Image service that classifies images in-process with a {@link LocalCatModel}, without any
+ * network access or credentials. The model is loaded once from a file, or from the
+ * {@value #BUNDLED_MODEL} resource, and shared by every caller.
+ * <p>
+ * Up to {@code parallelism} images or batches are scored at once, by whichever threads call in,
+ * each with one of a fixed set of preallocated workspaces; further callers wait for a workspace to
+ * come free.
+ * <p>
+ * The bundled model is a small placeholder fitted to the sample pictures that ship with the
+ * project; CatModelTrainer under src/test regenerates it. It shows the pipeline works end to end;
+ * for real cameras, train a model on a labelled data set with {@link LocalCatModel#extractFeatures}
+ * and load it from a file.
+ */
+public class LocalImageService implements ImageService {
+
+    public static final String BUNDLED_MODEL = "/cat-model.bin";
+
+    private final LocalCatModel model;
+    private final BlockingQueue<LocalCatModel.Workspace> workspaces;
+
+    /**
+     * Uses the bundled model and one workspace per processor.
+     * @throws UncheckedIOException if the bundled model is missing or unreadable
+     */
+    public LocalImageService() {
+        this(loadBundled(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @throws UncheckedIOException if the model file cannot be read
+     */
+    public LocalImageService(Path modelFile, int parallelism) {
+        this(load(modelFile), parallelism);
+    }
+
+    public LocalImageService(LocalCatModel model, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.model = model;
+        this.workspaces = new ArrayBlockingQueue<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            workspaces.add(model.newWorkspace());
+        }
+    }
+
+    private static LocalCatModel load(Path modelFile) {
+        try (InputStream in = Files.newInputStream(modelFile)) {
+            return LocalCatModel.read(in);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to load cat model " + modelFile, ioe);
+        }
+    }
+
+    private static LocalCatModel loadBundled() {
+        try (InputStream in = LocalImageService.class.getResourceAsStream(BUNDLED_MODEL)) {
+            if (in == null) {
+                throw new IOException("Resource not found");
+            }
+            return LocalCatModel.read(in);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to load bundled cat model " + BUNDLED_MODEL, ioe);
+        }
+    }
+
+    /**
+     * Returns true if the provided image contains a cat.
+     * @param image Image to scan
+     * @param confidenceThreshhold Minimum confidence in percent, as for AwsImageService
+     */
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        return catConfidence(image) >= confidenceThreshhold;
+    }
+
+    /**
+     * Scores the batch on the calling thread with one pooled workspace, in passes of up to
+     * {@link LocalCatModel#BATCH_SIZE} images.
+     */
+    @Override
+    public List<Boolean> imageContainsCat(List<BufferedImage> images, float confidenceThreshhold) {
+        float[] probabilities = new float[images.size()];
+        LocalCatModel.Workspace workspace = takeWorkspace();
+        try {
+            model.catProbabilities(images, probabilities, workspace);
+        } finally {
+            workspaces.add(workspace);
+        }
+        List<Boolean> results = new ArrayList<>(images.size());
+        for (float probability : probabilities) {
+            results.add(probability * 100f >= confidenceThreshhold);
+        }
+        return results;
+    }
+
+    /**
+     * @return The model's confidence, in percent, that the image shows a cat
+     */
+    public float catConfidence(BufferedImage image) {
+        LocalCatModel.Workspace workspace = takeWorkspace();
+        try {
+            return model.catProbability(image, workspace) * 100f;
+        } finally {
+            workspaces.add(workspace);
+        }
+    }
+
+    private LocalCatModel.Workspace takeWorkspace() {
+        try {
+            return workspaces.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting to classify an image", e);
+        }
+    }
+}
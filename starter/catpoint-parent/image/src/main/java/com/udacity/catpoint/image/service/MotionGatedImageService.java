@@ -0,0 +1,223 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * Image service that only passes frames on to another image service when something in the scene
+ * has moved. Each frame is reduced to a grid of brightness samples and compared with a background
+ * model of recent frames; when fewer than {@code changedRatio} of the cells differ from the
+ * background by more than {@code cellThreshold}, the frame is skipped and the previous verdict is
+ * returned instead.
+ * <p>
+ * The background follows the frames, moving halfway towards each one, so a cat that walks in and
+ * sits still is soon part of the background: the verdict for it is kept until something moves
+ * again. A scene can also change so slowly that no frame ever differs enough from the background,
+ * so a verdict is only reused for {@code maxVerdictAge} after the wrapped service gave it. The
+ * first frame, a frame of a new size, and a frame asked about at a different confidence threshold
+ * are always classified.
+ * <p>
+ * No frame is skipped while a classification is in flight: the verdict is cleared when a frame is
+ * passed on, and only the result for the last frame passed on becomes the new verdict. Otherwise
+ * a still frame arriving behind a moving one would be answered first, with the verdict from
+ * before the movement.
+ * <p>
+ * One instance models the scene of one camera. A batch is taken to hold frames from several
+ * cameras, which a single background cannot model, so batches are passed on ungated and are not
+ * counted as frames. A null image, as sent when no picture has been chosen yet, is passed on as
+ * it is.
+ */
+public class MotionGatedImageService implements ImageService {
+
+    public static final double DEFAULT_CHANGED_RATIO = 0.01;
+    public static final int DEFAULT_CELL_THRESHOLD = 24;
+    public static final Duration DEFAULT_MAX_VERDICT_AGE = Duration.ofSeconds(30);
+
+    //the frame is sampled on a 16:9 grid of cells, each cell at 2x2 points
+    private static final int GRID_COLUMNS = 64;
+    private static final int GRID_ROWS = 36;
+    private static final int CELL_SAMPLES = 2;
+
+    private final ImageService delegate;
+    private final double changedRatio;
+    private final int cellThreshold;
+    private final long maxVerdictAgeNanos;
+    private final LongSupplier nanoClock;
+
+    //per cell brightness, 0..255 scaled by CELL_SAMPLES squared; null until the first frame
+    private int[] background;
+    private int backgroundWidth;
+    private int backgroundHeight;
+    private Boolean verdict;
+    private float verdictThreshhold;
+    private long verdictNanos;
+    //number of the last frame passed on; only its result becomes the verdict
+    private long lastClassified;
+
+    private long frames;
+    private long skipped;
+
+    public MotionGatedImageService(ImageService delegate) {
+        this(delegate, DEFAULT_CHANGED_RATIO, DEFAULT_CELL_THRESHOLD, DEFAULT_MAX_VERDICT_AGE);
+    }
+
+    /**
+     * @param changedRatio Fraction of cells that must change for a frame to be classified
+     * @param cellThreshold Change in a cell's brightness, out of 255, that counts as a change
+     * @param maxVerdictAge How long a verdict is reused for skipped frames
+     */
+    public MotionGatedImageService(ImageService delegate, double changedRatio, int cellThreshold, Duration maxVerdictAge) {
+        this(delegate, changedRatio, cellThreshold, maxVerdictAge, System::nanoTime);
+    }
+
+    MotionGatedImageService(ImageService delegate, double changedRatio, int cellThreshold, Duration maxVerdictAge,
+                            LongSupplier nanoClock) {
+        if (changedRatio < 0 || changedRatio > 1) {
+            throw new IllegalArgumentException("Changed ratio must be between 0 and 1: " + changedRatio);
+        }
+        if (cellThreshold < 0 || cellThreshold > 255) {
+            throw new IllegalArgumentException("Cell threshold must be between 0 and 255: " + cellThreshold);
+        }
+        if (maxVerdictAge.isNegative() || maxVerdictAge.isZero()) {
+            throw new IllegalArgumentException("Verdict age must be positive: " + maxVerdictAge);
+        }
+        this.delegate = delegate;
+        this.changedRatio = changedRatio;
+        this.cellThreshold = cellThreshold;
+        this.maxVerdictAgeNanos = maxVerdictAge.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        if (image == null) {
+            return delegate.imageContainsCat(image, confidenceThreshhold);
+        }
+        long classification;
+        synchronized (this) {
+            Boolean previous = gate(image, confidenceThreshhold);
+            if (previous != null) {
+                return previous;
+            }
+            classification = ++lastClassified;
+        }
+        boolean containsCat = delegate.imageContainsCat(image, confidenceThreshhold);
+        remember(classification, containsCat, confidenceThreshhold);
+        return containsCat;
+    }
+
+    @Override
+    public List<Boolean> imageContainsCat(List<BufferedImage> images, float confidenceThreshhold) {
+        return delegate.imageContainsCat(images, confidenceThreshhold);
+    }
+
+    /**
+     * The gate runs on the calling thread; a skipped frame completes straight away.
+     */
+    @Override
+    public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshhold, Executor executor) {
+        if (image == null) {
+            return delegate.imageContainsCatAsync(image, confidenceThreshhold, executor);
+        }
+        long classification;
+        synchronized (this) {
+            Boolean previous = gate(image, confidenceThreshhold);
+            if (previous != null) {
+                return CompletableFuture.completedFuture(previous);
+            }
+            classification = ++lastClassified;
+        }
+        return delegate.imageContainsCatAsync(image, confidenceThreshhold, executor).thenApply(containsCat -> {
+            remember(classification, containsCat, confidenceThreshhold);
+            return containsCat;
+        });
+    }
+
+    /**
+     * Compares the frame with the background and folds it in.
+     * @return The previous verdict if the frame can be skipped, otherwise null, with the verdict
+     * cleared until the frame's own result arrives
+     */
+    private synchronized Boolean gate(BufferedImage image, float confidenceThreshhold) {
+        frames++;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] cells = sample(image);
+        if (background == null || width != backgroundWidth || height != backgroundHeight) {
+            background = cells;
+            backgroundWidth = width;
+            backgroundHeight = height;
+            verdict = null;
+            return null;
+        }
+
+        int scaledThreshold = cellThreshold * CELL_SAMPLES * CELL_SAMPLES;
+        int changed = 0;
+        for (int i = 0; i < cells.length; i++) {
+            int difference = cells[i] - background[i];
+            if (Math.abs(difference) > scaledThreshold) {
+                changed++;
+            }
+            background[i] += difference / 2;
+        }
+        if (verdict == null || Float.compare(verdictThreshhold, confidenceThreshhold) != 0
+                || nanoClock.getAsLong() - verdictNanos >= maxVerdictAgeNanos
+                || changed > changedRatio * cells.length) {
+            verdict = null;
+            return null;
+        }
+        skipped++;
+        return verdict;
+    }
+
+    private synchronized void remember(long classification, boolean containsCat, float confidenceThreshhold) {
+        if (classification != lastClassified) {
+            return; //a later frame was passed on since; its result will be the verdict
+        }
+        verdict = containsCat;
+        verdictThreshhold = confidenceThreshhold;
+        verdictNanos = nanoClock.getAsLong();
+    }
+
+    private static int[] sample(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] cells = new int[GRID_COLUMNS * GRID_ROWS];
+        int samplesX = GRID_COLUMNS * CELL_SAMPLES;
+        int samplesY = GRID_ROWS * CELL_SAMPLES;
+        for (int sy = 0; sy < samplesY; sy++) {
+            int y = (2 * sy + 1) * height / (2 * samplesY);
+            int row = sy / CELL_SAMPLES * GRID_COLUMNS;
+            for (int sx = 0; sx < samplesX; sx++) {
+                int rgb = image.getRGB((2 * sx + 1) * width / (2 * samplesX), y);
+                //ITU-R BT.601 luma, integer approximation
+                cells[row + sx / CELL_SAMPLES] += (((rgb >> 16) & 0xff) * 77 + ((rgb >> 8) & 0xff) * 150 + (rgb & 0xff) * 29) >> 8;
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @return Number of single frames gated, not counting batches
+     */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return Number of frames answered with the previous verdict instead of being classified
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return Fraction of frames skipped, 0 before the first frame
+     */
+    public synchronized double getSkipRate() {
+        return frames == 0 ? 0 : (double) skipped / frames;
+    }
+}
@@ -0,0 +1,234 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Unit tests for CachingImageService: near-identical frames share a result, different scenes,
+ * thresholds and expired results do not, and a simulated camera hour needs far fewer calls.
+ */
+public class CachingImageServiceTest {
+
+    private static final Duration TIME_TO_LIVE = Duration.ofSeconds(30);
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final ImageService delegate = (image, confidenceThreshhold) -> {
+        calls.incrementAndGet();
+        return true;
+    };
+    private long nanos;
+
+    private CachingImageService newService(int capacity) {
+        return new CachingImageService(delegate, capacity, CachingImageService.DEFAULT_MAX_DISTANCE, TIME_TO_LIVE, () -> nanos);
+    }
+
+    //a scene of random blocks, with every channel of every pixel jittered by up to +-noise
+    private static BufferedImage frame(long scene, Random noiseSource, int noise) {
+        Random blocks = new Random(scene);
+        int[] brightness = new int[12 * 9];
+        for (int i = 0; i < brightness.length; i++) {
+            brightness[i] = 20 + blocks.nextInt(216);
+        }
+        BufferedImage image = new BufferedImage(96, 72, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int base = brightness[(y / 8) * 12 + x / 8];
+                int rgb = 0;
+                for (int channel = 0; channel < 3; channel++) {
+                    int value = base + (noise == 0 ? 0 : noiseSource.nextInt(2 * noise + 1) - noise);
+                    rgb = (rgb << 8) | Math.max(0, Math.min(255, value));
+                }
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void nearIdenticalFrames_classifiedOnce() {
+        CachingImageService service = newService(16);
+        Random noise = new Random(1);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(service.imageContainsCat(frame(7, noise, 4), 50f));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(9, service.getHits());
+        assertEquals(1, service.getMisses());
+        assertEquals(0.9, service.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void differentScenesAndThresholds_notShared() {
+        CachingImageService service = newService(16);
+        Random noise = new Random(2);
+        service.imageContainsCat(frame(1, noise, 0), 50f);
+        service.imageContainsCat(frame(2, noise, 0), 50f);
+        service.imageContainsCat(frame(1, noise, 0), 90f);
+        assertEquals(3, calls.get());
+        assertTrue(Long.bitCount(CachingImageService.differenceHash(frame(1, noise, 0))
+                ^ CachingImageService.differenceHash(frame(2, noise, 0))) > CachingImageService.DEFAULT_MAX_DISTANCE);
+    }
+
+    @Test
+    public void expiredResult_classifiedAgain() {
+        CachingImageService service = newService(16);
+        Random noise = new Random(3);
+        service.imageContainsCat(frame(1, noise, 2), 50f);
+        nanos += TIME_TO_LIVE.toNanos() - 1;
+        service.imageContainsCat(frame(1, noise, 2), 50f);
+        assertEquals(1, calls.get());
+        nanos += 1;
+        service.imageContainsCat(frame(1, noise, 2), 50f);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void leastRecentlyUsed_evicted() {
+        CachingImageService service = newService(2);
+        Random noise = new Random(4);
+        service.imageContainsCat(frame(1, noise, 0), 50f);
+        service.imageContainsCat(frame(2, noise, 0), 50f);
+        service.imageContainsCat(frame(1, noise, 0), 50f);
+        service.imageContainsCat(frame(3, noise, 0), 50f);
+        assertEquals(3, calls.get());
+        assertEquals(1, service.getEvictions());
+
+        //scene 2 was least recently used, scene 1 is still there
+        service.imageContainsCat(frame(1, noise, 0), 50f);
+        assertEquals(3, calls.get());
+        service.imageContainsCat(frame(2, noise, 0), 50f);
+        assertEquals(4, calls.get());
+        assertEquals(2, service.size());
+    }
+
+    @Test
+    public void asyncHit_answeredWithoutExecutor() throws Exception {
+        CachingImageService service = newService(16);
+        Random noise = new Random(5);
+        CompletableFuture<Boolean> miss = service.imageContainsCatAsync(frame(1, noise, 2), 50f, Runnable::run);
+        assertTrue(miss.get());
+
+        Executor unusable = task -> fail("cache hit should not use the executor");
+        CompletableFuture<Boolean> hit = service.imageContainsCatAsync(frame(1, noise, 2), 50f, unusable);
+        assertTrue(hit.isDone());
+        assertTrue(hit.get());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void batch_onlyMissesForwardedAsOneBatch() {
+        List<Integer> batchSizes = new ArrayList<>();
+        ImageService batchingDelegate = new ImageService() {
+            @Override
+            public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+                throw new AssertionError("misses should be forwarded as a batch");
+            }
+
+            @Override
+            public List<Boolean> imageContainsCat(List<BufferedImage> images, float confidenceThreshhold) {
+                batchSizes.add(images.size());
+                return Collections.nCopies(images.size(), true);
+            }
+        };
+        CachingImageService service = new CachingImageService(batchingDelegate, 16, CachingImageService.DEFAULT_MAX_DISTANCE,
+                TIME_TO_LIVE, () -> nanos);
+        Random noise = new Random(7);
+        assertEquals(List.of(true, true), service.imageContainsCat(List.of(frame(1, noise, 2), frame(2, noise, 2)), 50f));
+        assertEquals(List.of(true, true, true),
+                service.imageContainsCat(List.of(frame(1, noise, 2), frame(3, noise, 2), frame(2, noise, 2)), 50f));
+        assertEquals(List.of(2, 1), batchSizes);
+        assertEquals(2, service.getHits());
+    }
+
+    // Scan Picture before any picture is chosen sends null, which the wrapped service must still see
+    @Test
+    public void nullImage_passedOnUncached() throws Exception {
+        CachingImageService service = newService(16);
+        BufferedImage noImage = null;
+        assertTrue(service.imageContainsCat(noImage, 50f));
+        assertTrue(service.imageContainsCatAsync(noImage, 50f, Runnable::run).get());
+        assertEquals(List.of(true, true), service.imageContainsCat(Arrays.asList(noImage, frame(1, new Random(8), 0)), 50f));
+        assertEquals(4, calls.get());
+        assertEquals(1, service.size());
+        assertEquals(1, service.getMisses());
+    }
+
+    // One frame a second for an hour, the scene changing every ten minutes
+    @Test
+    public void cameraHour_tenfoldFewerCalls() {
+        CachingImageService service = newService(CachingImageService.DEFAULT_CAPACITY);
+        Random noise = new Random(6);
+        int frames = 3600;
+        for (int second = 0; second < frames; second++) {
+            service.imageContainsCat(frame(second / 600, noise, 3), 50f);
+            nanos += Duration.ofSeconds(1).toNanos();
+        }
+        assertTrue(calls.get() * 10 <= frames, calls.get() + " calls for " + frames + " frames");
+    }
+
+    // The bands find what comparing against every stored hash finds, whichever bands the flipped bits hit
+    @Test
+    public void nearHashes_foundThroughBandIndex() {
+        for (int maxDistance : new int[] {0, 4, 9, CachingImageService.MAX_INDEXED_DISTANCE + 1}) {
+            CachingImageService service = new CachingImageService(delegate, 4096, maxDistance, TIME_TO_LIVE, () -> nanos);
+            Random random = new Random(maxDistance);
+            long[] stored = new long[2000];
+            for (int i = 0; i < stored.length; i++) {
+                stored[i] = random.nextLong();
+                service.store(stored[i], 50f, i % 2 == 0);
+            }
+            for (int i = 0; i < stored.length; i++) {
+                int flips = random.nextInt(maxDistance + 3);
+                long hash = stored[i];
+                while (Long.bitCount(hash ^ stored[i]) < flips) {
+                    hash ^= 1L << random.nextInt(Long.SIZE);
+                }
+                //the closest stored hash in range, found the slow way; equally close ones that disagree could go either way
+                Boolean expected = null;
+                boolean tied = false;
+                int closest = maxDistance + 1;
+                for (int j = 0; j < stored.length; j++) {
+                    int distance = Long.bitCount(hash ^ stored[j]);
+                    if (distance < closest) {
+                        closest = distance;
+                        expected = j % 2 == 0;
+                        tied = false;
+                    } else if (distance == closest && expected != null && expected != (j % 2 == 0)) {
+                        tied = true;
+                    }
+                }
+                if (tied) {
+                    continue;
+                }
+                assertEquals(expected, service.lookup(hash, 50f), flips + " bits from hash " + i + " at distance " + maxDistance);
+            }
+        }
+    }
+
+    // A replaced or evicted result leaves the index with it
+    @Test
+    public void evictedAndReplaced_goneFromBandIndex() {
+        CachingImageService service = newService(2);
+        service.store(0b1111L, 50f, true);
+        service.store(0b1111L, 50f, false);
+        assertEquals(false, service.lookup(0b0111L, 50f));
+        service.store(-1L, 50f, true);
+        service.store(-2L, 50f, true);
+        assertEquals(1, service.getEvictions());
+        assertNull(service.lookup(0b0111L, 50f));
+        assertEquals(true, service.lookup(-4L, 50f));
+    }
+}
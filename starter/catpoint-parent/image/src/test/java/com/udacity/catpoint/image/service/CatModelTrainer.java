@@ -0,0 +1,151 @@
+package com.udacity.catpoint.image.service;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Produces the placeholder model bundled as {@value LocalImageService#BUNDLED_MODEL}, so the file
+ * can be regenerated and audited. Regenerate it from the project root with
+ * <pre>
+ * mvn -pl image -P train-model verify
+ * </pre>
+ * The model is fitted to random crops of the three sample pictures, labelled cat, not cat and not
+ * cat: each crop covers 70 to 100% of a picture, is scaled down to a quarter, optionally mirrored
+ * and shifted by a random brightness. The network is trained with plain stochastic gradient
+ * descent on cross-entropy, with the cat class weighted twice to balance the labels and a small
+ * weight decay. Everything is seeded and uses strict floating point, so a run reproduces the
+ * bundled file byte for byte.
+ * <p>
+ * Three pictures are nowhere near enough to learn what a cat looks like. To train a real model,
+ * pass a labelled data set to {@link #train(List, float[])}.
+ */
+public final class CatModelTrainer {
+
+    static final int INPUT_SIDE = 16;
+    static final int HIDDEN_UNITS = 8;
+    static final float[] MEAN = {0.5f, 0.5f, 0.5f};
+    static final float[] SCALE = {4f, 4f, 4f};
+    static final float[] SAMPLE_LABELS = {1, 0, 0};
+
+    private static final long SEED = 7;
+    private static final int CROPS = 600;
+    private static final int EPOCHS = 60;
+    private static final float LEARNING_RATE = 0.01f;
+    private static final float WEIGHT_DECAY = 1e-3f;
+    private static final float CAT_WEIGHT = 2f;
+
+    private CatModelTrainer() {}
+
+    /**
+     * @return The sample pictures in the project root, in the order of {@link #SAMPLE_LABELS}
+     */
+    static List<BufferedImage> samplePictures(Path projectRoot) throws IOException {
+        return List.of(ImageIO.read(projectRoot.resolve("sample-cat.jpg").toFile()),
+                ImageIO.read(projectRoot.resolve("sample-not-cat.jpg").toFile()),
+                ImageIO.read(projectRoot.resolve("sample-not-a-cat-fail.jpg").toFile()));
+    }
+
+    /**
+     * Fits a model to augmented crops of the pictures.
+     * @param labels 1 for each picture of a cat, 0 otherwise
+     */
+    static LocalCatModel train(List<BufferedImage> pictures, float[] labels) {
+        Random random = new Random(SEED);
+        int inputs = INPUT_SIDE * INPUT_SIDE * 3;
+        //an untrained model of the right shape, used only to extract features
+        LocalCatModel features = new LocalCatModel(INPUT_SIDE, INPUT_SIDE, MEAN, SCALE, new float[HIDDEN_UNITS * inputs],
+                new float[HIDDEN_UNITS], new float[HIDDEN_UNITS], 0);
+
+        float[][] x = new float[CROPS][inputs];
+        float[] y = new float[CROPS];
+        for (int n = 0; n < CROPS; n++) {
+            int picture = n % pictures.size();
+            features.extractFeatures(crop(pictures.get(picture), random), x[n]);
+            float brightness = (float) (random.nextGaussian() * 0.3);
+            for (int i = 0; i < inputs; i++) {
+                x[n][i] += brightness;
+            }
+            y[n] = labels[picture];
+        }
+
+        float[] hiddenWeights = new float[HIDDEN_UNITS * inputs];
+        float[] hiddenBiases = new float[HIDDEN_UNITS];
+        float[] outputWeights = new float[HIDDEN_UNITS];
+        float outputBias = 0;
+        for (int i = 0; i < hiddenWeights.length; i++) {
+            hiddenWeights[i] = (float) (random.nextGaussian() * 0.02);
+        }
+        for (int i = 0; i < HIDDEN_UNITS; i++) {
+            outputWeights[i] = (float) (random.nextGaussian() * 0.3);
+        }
+
+        float[] hidden = new float[HIDDEN_UNITS];
+        for (int epoch = 0; epoch < EPOCHS; epoch++) {
+            for (int n = 0; n < CROPS; n++) {
+                float output = outputBias;
+                for (int unit = 0; unit < HIDDEN_UNITS; unit++) {
+                    float sum = hiddenBiases[unit];
+                    for (int i = 0; i < inputs; i++) {
+                        sum += hiddenWeights[unit * inputs + i] * x[n][i];
+                    }
+                    hidden[unit] = Math.max(0, sum);
+                    output += outputWeights[unit] * hidden[unit];
+                }
+                float probability = (float) (1 / (1 + StrictMath.exp(-output)));
+                float error = (probability - y[n]) * (y[n] == 1 ? CAT_WEIGHT : 1);
+                for (int unit = 0; unit < HIDDEN_UNITS; unit++) {
+                    float hiddenError = hidden[unit] > 0 ? error * outputWeights[unit] : 0;
+                    outputWeights[unit] -= LEARNING_RATE * (error * hidden[unit] + WEIGHT_DECAY * outputWeights[unit]);
+                    hiddenBiases[unit] -= LEARNING_RATE * hiddenError;
+                    for (int i = 0; i < inputs; i++) {
+                        int weight = unit * inputs + i;
+                        hiddenWeights[weight] -= LEARNING_RATE * (hiddenError * x[n][i] + WEIGHT_DECAY * hiddenWeights[weight]);
+                    }
+                }
+                outputBias -= LEARNING_RATE * error;
+            }
+        }
+        return new LocalCatModel(INPUT_SIDE, INPUT_SIDE, MEAN, SCALE, hiddenWeights, hiddenBiases, outputWeights, outputBias);
+    }
+
+    //a random 70-100% crop, scaled to a quarter and mirrored half of the time
+    private static BufferedImage crop(BufferedImage source, Random random) {
+        double fraction = 0.7 + 0.3 * random.nextDouble();
+        int cropWidth = (int) (source.getWidth() * fraction);
+        int cropHeight = (int) (source.getHeight() * fraction);
+        int left = random.nextInt(source.getWidth() - cropWidth + 1);
+        int top = random.nextInt(source.getHeight() - cropHeight + 1);
+        BufferedImage crop = new BufferedImage(cropWidth / 4, cropHeight / 4, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = crop.createGraphics();
+        if (random.nextBoolean()) {
+            graphics.drawImage(source, cropWidth / 4, 0, 0, cropHeight / 4, left, top, left + cropWidth, top + cropHeight, null);
+        } else {
+            graphics.drawImage(source, 0, 0, cropWidth / 4, cropHeight / 4, left, top, left + cropWidth, top + cropHeight, null);
+        }
+        graphics.dispose();
+        return crop;
+    }
+
+    /**
+     * @param args Project root holding the sample pictures, and the model file to write
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CatModelTrainer <project root> <model file>");
+            System.exit(2);
+        }
+        LocalCatModel model = train(samplePictures(Paths.get(args[0])), SAMPLE_LABELS);
+        try (OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+            model.write(out);
+        }
+        System.out.println("Wrote " + args[1]);
+    }
+}
@@ -0,0 +1,171 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests for LocalImageService and the LocalCatModel file format. The bundled model is only checked
+ * to be what CatModelTrainer produces: it was fitted to the sample pictures, so scoring them says
+ * nothing about how well it classifies.
+ */
+public class LocalImageServiceTest {
+
+    private static BufferedImage cat;
+    private static BufferedImage notCat;
+    private static BufferedImage cows;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void loadSamples() throws IOException {
+        List<BufferedImage> samples = CatModelTrainer.samplePictures(Paths.get(".."));
+        cat = samples.get(0);
+        notCat = samples.get(1);
+        cows = samples.get(2);
+    }
+
+    private static LocalCatModel bundledModel() throws IOException {
+        try (InputStream in = LocalImageService.class.getResourceAsStream(LocalImageService.BUNDLED_MODEL)) {
+            return LocalCatModel.read(in);
+        }
+    }
+
+    // The bundled file can be regenerated and audited from the trainer's source
+    @Test
+    public void bundledModel_isWhatTheTrainerProduces() throws IOException {
+        ByteArrayOutputStream trained = new ByteArrayOutputStream();
+        CatModelTrainer.train(List.of(cat, notCat, cows), CatModelTrainer.SAMPLE_LABELS).write(trained);
+        ByteArrayOutputStream bundled = new ByteArrayOutputStream();
+        bundledModel().write(bundled);
+        assertArrayEquals(bundled.toByteArray(), trained.toByteArray());
+    }
+
+    // A 1x1 input and one hidden unit that only looks at red, scored by hand
+    @Test
+    public void knownWeights_scoredAsComputedByHand() {
+        LocalCatModel model = new LocalCatModel(1, 1, new float[]{0.5f, 0.5f, 0.5f}, new float[]{2, 2, 2},
+                new float[]{1, 0, 0}, new float[]{0.1f}, new float[]{3}, -1f);
+        LocalCatModel.Workspace workspace = model.newWorkspace();
+        BufferedImage red = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        BufferedImage blue = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                red.setRGB(x, y, 0xff0000);
+                blue.setRGB(x, y, 0x0000ff);
+            }
+        }
+        //red: input (1, -1, -1), hidden relu(1 + 0.1) = 1.1, output 3 * 1.1 - 1 = 2.3
+        assertEquals(1 / (1 + Math.exp(-2.3)), model.catProbability(red, workspace), 1e-6);
+        //blue: input (-1, -1, 1), hidden relu(-1 + 0.1) = 0, output -1
+        assertEquals(1 / (1 + Math.exp(1)), model.catProbability(blue, workspace), 1e-6);
+    }
+
+    // Longer than one batch pass, so it is scored in chunks through the same workspace
+    @Test
+    public void batch_sameResultsAsOneAtATime() throws IOException {
+        LocalCatModel model = bundledModel();
+        LocalCatModel.Workspace workspace = model.newWorkspace();
+        List<BufferedImage> images = new ArrayList<>();
+        for (int i = 0; i < LocalCatModel.BATCH_SIZE + 3; i++) {
+            images.add(List.of(cows, cat, notCat).get(i % 3));
+        }
+        float[] batch = new float[images.size()];
+        model.catProbabilities(images, batch, workspace);
+        for (int i = 0; i < images.size(); i++) {
+            assertEquals(model.catProbability(images.get(i), workspace), batch[i]);
+        }
+
+        LocalImageService service = new LocalImageService(model, 1);
+        List<Boolean> expected = new ArrayList<>();
+        for (BufferedImage image : images) {
+            expected.add(service.imageContainsCat(image, 50f));
+        }
+        assertEquals(expected, service.imageContainsCat(images, 50f));
+    }
+
+    @Test
+    public void concurrentCallers_sameResultsAsOneThread() throws Exception {
+        LocalImageService service = new LocalImageService();
+        BufferedImage[] images = {cat, notCat, cows};
+        float[] expected = new float[images.length];
+        for (int i = 0; i < images.length; i++) {
+            expected[i] = service.catConfidence(images[i]);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Float>> results = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                BufferedImage image = images[i % images.length];
+                results.add(pool.submit(() -> service.catConfidence(image)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(expected[i % images.length], results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void modelFile_roundTrip() throws Exception {
+        LocalCatModel model = new LocalCatModel(2, 1, new float[]{0.5f, 0.5f, 0.5f}, new float[]{2, 2, 2},
+                new float[]{1, 0, 0, 0, 0, -1}, new float[]{0.1f}, new float[]{3}, -1f);
+        Path file = tempDir.resolve("tiny.model");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            model.write(out);
+        }
+        LocalImageService service = new LocalImageService(file, 1);
+        BufferedImage redLeft = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        redLeft.setRGB(0, 0, 0xff0000);
+        LocalCatModel.Workspace workspace = model.newWorkspace();
+        assertEquals(model.catProbability(redLeft, workspace) * 100f, service.catConfidence(redLeft));
+        assertTrue(service.imageContainsCat(redLeft, 50f));
+    }
+
+    @Test
+    public void badModelFiles_rejected() throws Exception {
+        assertThrows(UncheckedIOException.class, () -> new LocalImageService(tempDir.resolve("missing"), 1));
+        assertThrows(IOException.class, () -> LocalCatModel.read(new ByteArrayInputStream("not a model".getBytes())));
+
+        //a valid header with the weights cut short
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new LocalCatModel(1, 1, new float[3], new float[3], new float[3], new float[1], new float[1], 0).write(bytes);
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 8);
+        assertThrows(IOException.class, () -> LocalCatModel.read(new ByteArrayInputStream(truncated)));
+        assertThrows(IllegalArgumentException.class, () -> new LocalCatModel(1, 1, new float[3], new float[3],
+                new float[2], new float[1], new float[1], 0));
+
+        //every layer within its limit, but together 805 million weights; rejected before allocating them
+        ByteArrayOutputStream huge = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(huge);
+        for (int value : new int[] {LocalCatModel.MAGIC, LocalCatModel.VERSION, 256, 256, 4096}) {
+            header.writeInt(value);
+        }
+        IOException rejected = assertThrows(IOException.class, () -> LocalCatModel.read(new ByteArrayInputStream(huge.toByteArray())));
+        assertTrue(rejected.getMessage().startsWith("Bad cat model header"), rejected.getMessage());
+    }
+}
@@ -0,0 +1,170 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Unit tests for MotionGatedImageService: still scenes are skipped with the previous verdict, and
+ * movement, new frame sizes, new thresholds and old verdicts are classified.
+ */
+public class MotionGatedImageServiceTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private boolean containsCat;
+    private final ImageService delegate = (image, confidenceThreshhold) -> {
+        calls.incrementAndGet();
+        return containsCat;
+    };
+    private long nanos;
+    private final MotionGatedImageService service = new MotionGatedImageService(delegate, MotionGatedImageService.DEFAULT_CHANGED_RATIO,
+            MotionGatedImageService.DEFAULT_CELL_THRESHOLD, MotionGatedImageService.DEFAULT_MAX_VERDICT_AGE, () -> nanos);
+    private final Random noise = new Random(42);
+
+    private BufferedImage frame(int width, int height, int catX) {
+        return frame(width, height, catX, 140);
+    }
+
+    //a grey room with sensor noise, and optionally a dark cat-sized square at x
+    private BufferedImage frame(int width, int height, int catX, int brightness) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int grey = brightness + noise.nextInt(9) - 4;
+                image.setRGB(x, y, grey << 16 | grey << 8 | grey);
+            }
+        }
+        if (catX >= 0) {
+            Graphics2D graphics = image.createGraphics();
+            graphics.setColor(Color.DARK_GRAY);
+            graphics.fillRect(catX, height / 3, width / 5, height / 4);
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    @Test
+    public void stillScene_skippedWithPreviousVerdict() {
+        for (int i = 0; i < 10; i++) {
+            assertFalse(service.imageContainsCat(frame(160, 90, -1), 50f));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(10, service.getFrames());
+        assertEquals(9, service.getSkipped());
+        assertEquals(0.9, service.getSkipRate(), 1e-9);
+    }
+
+    @Test
+    public void movement_classifiedUntilItStops() {
+        service.imageContainsCat(frame(160, 90, -1), 50f);
+        containsCat = true;
+        assertTrue(service.imageContainsCat(frame(160, 90, 20), 50f));
+        assertTrue(service.imageContainsCat(frame(160, 90, 60), 50f));
+        assertEquals(3, calls.get());
+
+        //the cat sits still: it fades into the background and the verdict is kept
+        for (int i = 0; i < 10; i++) {
+            assertTrue(service.imageContainsCat(frame(160, 90, 60), 50f));
+        }
+        assertTrue(calls.get() <= 8, calls.get() + " calls");
+        containsCat = false;
+        assertFalse(service.imageContainsCat(frame(160, 90, -1), 50f), "cat leaving should be classified");
+    }
+
+    @Test
+    public void newSizeOrThreshold_classified() {
+        service.imageContainsCat(frame(160, 90, -1), 50f);
+        service.imageContainsCat(frame(160, 90, -1), 90f);
+        service.imageContainsCat(frame(320, 180, -1), 90f);
+        assertEquals(3, calls.get());
+        service.imageContainsCat(frame(320, 180, -1), 90f);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void asyncSkip_answeredWithoutExecutor() throws Exception {
+        assertFalse(service.imageContainsCatAsync(frame(160, 90, -1), 50f, Runnable::run).get());
+        Executor unusable = task -> fail("skipped frame should not use the executor");
+        CompletableFuture<Boolean> skipped = service.imageContainsCatAsync(frame(160, 90, -1), 50f, unusable);
+        assertTrue(skipped.isDone());
+        assertEquals(1, calls.get());
+    }
+
+    // Movement is still being classified when a still frame arrives; answering that frame with the
+    // verdict from before the movement would let it overtake the movement's result
+    @Test
+    public void stillFrameWhileClassifying_notSkippedWithOldVerdict() throws Exception {
+        List<Runnable> classifying = new ArrayList<>();
+        Executor late = classifying::add;
+        assertFalse(service.imageContainsCatAsync(frame(160, 90, -1), 50f, Runnable::run).get());
+
+        containsCat = true;
+        CompletableFuture<Boolean> moving = service.imageContainsCatAsync(frame(160, 90, 60), 50f, late);
+        CompletableFuture<Boolean> still = service.imageContainsCatAsync(frame(160, 90, 60), 50f, late);
+        assertFalse(still.isDone(), "still frame answered with the verdict from before the movement");
+        assertEquals(2, classifying.size());
+
+        //the still frame's result comes back first; the moving frame's older result must not replace it
+        classifying.get(1).run();
+        containsCat = false;
+        classifying.get(0).run();
+        assertTrue(still.get());
+        assertFalse(moving.get());
+        CompletableFuture<Boolean> after = service.imageContainsCatAsync(frame(160, 90, 60), 50f, late);
+        assertTrue(after.isDone());
+        assertTrue(after.get());
+        assertEquals(3, calls.get());
+    }
+
+    // Dusk: each frame a little darker, never enough to count as movement
+    @Test
+    public void slowChange_reclassifiedOnceVerdictIsOld() {
+        Duration second = Duration.ofSeconds(1);
+        int frames = (int) MotionGatedImageService.DEFAULT_MAX_VERDICT_AGE.getSeconds();
+        for (int i = 0; i < frames; i++) {
+            service.imageContainsCat(frame(160, 90, -1, 180 - 2 * i), 50f);
+            nanos += second.toNanos();
+        }
+        assertEquals(1, calls.get());
+        service.imageContainsCat(frame(160, 90, -1, 180 - 2 * frames), 50f);
+        assertEquals(2, calls.get());
+        service.imageContainsCat(frame(160, 90, -1, 180 - 2 * frames), 50f);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void nullImageAndBatches_passedOnUngated() throws Exception {
+        containsCat = true;
+        BufferedImage noImage = null;
+        assertTrue(service.imageContainsCat(noImage, 50f));
+        assertTrue(service.imageContainsCatAsync(noImage, 50f, Runnable::run).get());
+        assertEquals(List.of(true, true), service.imageContainsCat(Arrays.asList(frame(160, 90, -1), frame(160, 90, -1)), 50f));
+        assertEquals(4, calls.get());
+        assertEquals(0, service.getFrames());
+
+        service.imageContainsCat(frame(160, 90, -1), 50f);
+        service.imageContainsCat(frame(160, 90, -1), 50f);
+        assertEquals(0.5, service.getSkipRate(), 1e-9);
+    }
+
+    @Test
+    public void badSettings_rejected() {
+        Duration age = MotionGatedImageService.DEFAULT_MAX_VERDICT_AGE;
+        assertThrows(IllegalArgumentException.class, () -> new MotionGatedImageService(delegate, 1.5, 10, age));
+        assertThrows(IllegalArgumentException.class, () -> new MotionGatedImageService(delegate, 0.01, 300, age));
+        assertThrows(IllegalArgumentException.class, () -> new MotionGatedImageService(delegate, 0.01, 10, Duration.ZERO));
+    }
+}
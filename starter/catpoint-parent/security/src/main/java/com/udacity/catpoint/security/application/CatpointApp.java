@@ -1,10 +1,17 @@
 package com.udacity.catpoint.security.application;
 
+import java.util.Arrays;
+
 /**
- * This is the main class that launches the application.
+ * This is the main class that launches the application. With {@code --headless} it starts
+ * {@link CatpointDaemon} instead of the GUI, passing all arguments on.
  */
 public class CatpointApp {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--headless")) {
+            CatpointDaemon.main(args);
+            return;
+        }
         CatpointGui gui = new CatpointGui();
         gui.setVisible(true);
     }
@@ -0,0 +1,204 @@
+package com.udacity.catpoint.security.application;
+
+import com.udacity.catpoint.image.service.CachingImageService;
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.LocalImageService;
+import com.udacity.catpoint.image.service.MotionGatedImageService;
+import com.udacity.catpoint.security.data.InMemorySecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.JournalSecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.PretendDatabaseSecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.WriteBehindSecurityRepository;
+import com.udacity.catpoint.security.ingest.BinarySensorEventServer;
+import com.udacity.catpoint.security.ingest.SensorEventServer;
+import com.udacity.catpoint.security.service.SecurityEventLoop;
+import com.udacity.catpoint.security.service.SecurityEventType;
+import com.udacity.catpoint.security.service.SecurityService;
+import com.udacity.catpoint.security.service.SecurityState;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless launcher: wires a {@link SecurityService} to the repository and image service chosen by
+ * a {@link HeadlessConfig} and keeps it running without any user interface. Nothing on this path
+ * touches Swing, MigLayout or the panels, so a server only pays for the classes that process
+ * sensor and camera events.
+ * <p>
+ * Run it with {@code CatpointApp --headless [--key=value ...]}, or through {@link #main(String[])}
+ * directly. It runs until the JVM is shut down, then closes the repositories so pending changes
+ * are written. When a port is configured, gateways feed sensor events in through a
+ * {@link SensorEventServer} or {@link BinarySensorEventServer}, and every change to the service
+ * goes through one shared event loop.
+ */
+public class CatpointDaemon implements AutoCloseable {
+
+    private final Deque<AutoCloseable> closeables = new ArrayDeque<>();
+    private final SecurityService securityService;
+    private final SensorEventServer server;
+    private final BinarySensorEventServer binaryServer;
+    private SecurityEventLoop eventLoop;
+
+    /**
+     * If any step fails, whatever was already started is closed again before the exception is rethrown.
+     * @throws UncheckedIOException if the configured port cannot be bound
+     */
+    public CatpointDaemon(HeadlessConfig config) {
+        try {
+            SecurityRepository repository = createRepository(config);
+            if (config.getDurabilityMode() != null) {
+                repository = track(new WriteBehindSecurityRepository(repository, config.getDurabilityMode(), config.getFlushInterval()));
+            }
+            ImageService imageService = createImageService(config.getImageService());
+            if (config.getImageCacheSize() > 0) {
+                imageService = new CachingImageService(imageService, config.getImageCacheSize(),
+                        CachingImageService.DEFAULT_MAX_DISTANCE, CachingImageService.DEFAULT_TIME_TO_LIVE);
+            }
+            if (config.isMotionGate()) {
+                imageService = new MotionGatedImageService(imageService);
+            }
+            securityService = new SecurityService(repository, imageService);
+            if (config.isLogEvents()) {
+                securityService.getEventBus().subscribe(SecurityEventType.ALARM_STATUS_CHANGED,
+                        status -> System.out.println("Alarm status: " + status));
+            }
+            server = config.getPort() < 0 ? null
+                    : track(new SensorEventServer(eventLoop(), new InetSocketAddress(config.getBindAddress(), config.getPort())));
+            binaryServer = config.getBinaryPort() < 0 ? null
+                    : track(new BinarySensorEventServer(eventLoop(), new InetSocketAddress(config.getBindAddress(), config.getBinaryPort())));
+        } catch (IOException ioe) {
+            UncheckedIOException e = new UncheckedIOException("Unable to listen on " + config.getBindAddress(), ioe);
+            closeAfterFailure(e);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            closeAfterFailure(e);
+            throw e;
+        }
+    }
+
+    //closes what the constructor had started, newest first, keeping their failures with the original one
+    private void closeAfterFailure(Throwable failure) {
+        while (!closeables.isEmpty()) {
+            try {
+                closeables.pop().close();
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    private SecurityEventLoop eventLoop() {
+        if (eventLoop == null) {
+            eventLoop = track(new SecurityEventLoop(securityService));
+        }
+        return eventLoop;
+    }
+
+    private SecurityRepository createRepository(HeadlessConfig config) {
+        switch (config.getRepositoryType()) {
+            case MEMORY:
+                return new InMemorySecurityRepositoryImpl();
+            case PREFERENCES:
+                return new PretendDatabaseSecurityRepositoryImpl();
+            default:
+                return track(config.getJournalPath() == null
+                        ? new JournalSecurityRepositoryImpl()
+                        : new JournalSecurityRepositoryImpl(config.getJournalPath()));
+        }
+    }
+
+    private <T extends AutoCloseable> T track(T closeable) {
+        closeables.push(closeable);
+        return closeable;
+    }
+
+    /**
+     * @param imageService "fake", "local" for the in-process model, or the class name of an ImageService
+     *                     with a no-argument constructor.
+     *                     Loaded by name so backends this launcher does not use are never loaded.
+     */
+    static ImageService createImageService(String imageService) {
+        if (imageService.equals("fake")) {
+            return new FakeImageService();
+        }
+        if (imageService.equals("local")) {
+            return new LocalImageService();
+        }
+        try {
+            return Class.forName(imageService).asSubclass(ImageService.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Unable to create image service " + imageService, e);
+        }
+    }
+
+    public SecurityService getSecurityService() {
+        return securityService;
+    }
+
+    /**
+     * @return The port gateways connect to, or -1 if the daemon is not listening
+     */
+    public int getPort() {
+        return server == null ? -1 : server.getPort();
+    }
+
+    /**
+     * @return The port binary frame streams connect to, or -1 if the daemon is not listening for them
+     */
+    public int getBinaryPort() {
+        return binaryServer == null ? -1 : binaryServer.getPort();
+    }
+
+    /**
+     * Closes the server and event loop, then the write-behind cache and the repository, so every
+     * accepted event is applied and reaches storage.
+     */
+    @Override
+    public void close() throws Exception {
+        while (!closeables.isEmpty()) {
+            closeables.pop().close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long started = System.nanoTime();
+        HeadlessConfig config;
+        try {
+            config = HeadlessConfig.fromArgs(args);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        CatpointDaemon daemon = new CatpointDaemon(config);
+        SecurityState state = daemon.getSecurityService().getState();
+        System.out.printf("CatPoint daemon ready in %d ms: %s, %s%s%s%n", (System.nanoTime() - started) / 1_000_000,
+                state.getArmingStatus(), state.getAlarmStatus(), daemon.getPort() < 0 ? "" : ", port " + daemon.getPort(),
+                daemon.getBinaryPort() < 0 ? "" : ", binary port " + daemon.getBinaryPort());
+        if (config.isDryRun()) {
+            daemon.close();
+            return;
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (Exception e) {
+                System.err.println("Unable to close cleanly: " + e);
+            } finally {
+                stopped.countDown();
+            }
+        }, "catpoint-daemon-shutdown"));
+        stopped.await();
+    }
+}
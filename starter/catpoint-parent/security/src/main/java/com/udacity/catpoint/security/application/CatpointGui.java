@@ -1,13 +1,18 @@
 package com.udacity.catpoint.security.application;
 
 import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.DurabilityMode;
 import com.udacity.catpoint.security.data.PretendDatabaseSecurityRepositoryImpl;
 import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.image.service.CachingImageService;
 import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.image.service.MotionGatedImageService;
+import com.udacity.catpoint.security.data.WriteBehindSecurityRepository;
 import com.udacity.catpoint.security.service.SecurityService;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
+import java.time.Duration;
 
 /**
  * This is the primary JFrame for the application that contains all the top-level JPanels.
@@ -16,9 +21,11 @@ import javax.swing.*;
  * all our dependencies and providing them to other classes as necessary.
  */
 public class CatpointGui extends JFrame {
-    private SecurityRepository securityRepository = new PretendDatabaseSecurityRepositoryImpl();
-    private ImageService imageService = new FakeImageService();
-    private SecurityService securityService = new SecurityService(securityRepository, imageService);
+    private SecurityRepository securityRepository = new WriteBehindSecurityRepository(
+            new PretendDatabaseSecurityRepositoryImpl(), DurabilityMode.COALESCED, Duration.ofSeconds(1));
+    private ImageService imageService = new MotionGatedImageService(new CachingImageService(new FakeImageService()));
+    private SecurityService securityService = new SecurityService(securityRepository, imageService, SwingUtilities::invokeLater,
+            SecurityService.newImageExecutor(1, 4), SwingUtilities::invokeLater);
     private DisplayPanel displayPanel = new DisplayPanel(securityService);
     private ControlPanel controlPanel = new ControlPanel(securityService);
     private SensorPanel sensorPanel = new SensorPanel(securityService);
@@ -1,16 +1,17 @@
 package com.udacity.catpoint.security.application;
 
 import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.service.SecurityEventType;
 import com.udacity.catpoint.security.service.SecurityService;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
 
 /**
- * Displays the current status of the system. Implements the StatusListener
- * interface so that it can be notified whenever the status changes.
+ * Displays the current status of the system. Subscribes to alarm status changes
+ * so that it can be updated whenever the status changes.
  */
-public class DisplayPanel extends JPanel implements StatusListener {
+public class DisplayPanel extends JPanel {
 
     private JLabel currentStatusLabel;
 
@@ -18,32 +19,21 @@ public class DisplayPanel extends JPanel implements StatusListener {
         super();
         setLayout(new MigLayout());
 
-        securityService.addStatusListener(this);
+        securityService.getEventBus().subscribe(SecurityEventType.ALARM_STATUS_CHANGED, this::showAlarmStatus);
 
         JLabel panelLabel = new JLabel("Very Secure Home Security");
         JLabel systemStatusLabel = new JLabel("System Status:");
         currentStatusLabel = new JLabel();
         panelLabel.setFont(StyleService.HEADING_FONT);
-        notify(securityService.getAlarmStatus());
+        showAlarmStatus(securityService.getAlarmStatus());
         add(panelLabel, "span 2, wrap");
         add(systemStatusLabel);
         add(currentStatusLabel, "wrap");
     }
 
-    @Override
-    public void notify(AlarmStatus status) {
+    private void showAlarmStatus(AlarmStatus status) {
         currentStatusLabel.setText(status.getDescription());
         currentStatusLabel.setBackground(status.getColor());
         currentStatusLabel.setOpaque(true);
     }
-
-    @Override
-    public void catDetected(boolean catDetected) {
-        // no behavior necessary
-    }
-
-    @Override
-    public void sensorStatusChanged() {
-        // no behavior necessary
-    }
 }
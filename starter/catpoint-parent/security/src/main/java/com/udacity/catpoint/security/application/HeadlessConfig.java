@@ -0,0 +1,214 @@
+package com.udacity.catpoint.security.application;
+
+import com.udacity.catpoint.image.service.CachingImageService;
+import com.udacity.catpoint.security.data.DurabilityMode;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Settings for {@link CatpointDaemon}, read from command line options of the form
+ * {@code --key=value}, optionally on top of a properties file named by {@code --config=path}.
+ * Options given on the command line win over the file. Recognized keys:
+ * <pre>
+ * repository     journal (default), memory or preferences
+ * journal        journal file for the journal repository, default ~/.catpoint/security.journal
+ * durability     sync or coalesced to put a write-behind cache in front of the repository; unset for none
+ * flushInterval  flush interval of a coalesced write-behind cache in milliseconds, default 1000
+ * image          fake (default), local, or the class name of an ImageService with a no-argument constructor
+ * imageCache     frames whose results are reused for similar frames, default 1024; 0 for no cache
+ * motionGate     true (default) to only classify frames in which something moved
+ * logEvents      true (default) to print alarm status changes to standard output
+ * port           port to accept gateway connections on, see SensorEventServer; unset for none, 0 for any free port
+ * binaryPort     port to accept binary frame streams on, see BinarySensorEventServer; unset for none
+ * bind           address the ports are bound to, default 127.0.0.1
+ * </pre>
+ * The flags {@code --headless}, which selects this launcher in {@link CatpointApp}, and
+ * {@code --dry-run}, which starts everything, prints the state and exits, take no value.
+ */
+public class HeadlessConfig {
+
+    public enum RepositoryType { JOURNAL, MEMORY, PREFERENCES }
+
+    private static final String CONFIG = "config";
+    private static final String HEADLESS_FLAG = "--headless";
+    private static final String DRY_RUN_FLAG = "--dry-run";
+    private static final Set<String> KEYS = Set.of("repository", "journal", "durability", "flushInterval", "image", "imageCache",
+            "motionGate", "logEvents", "port", "binaryPort", "bind");
+
+    private final Properties properties;
+    private final boolean dryRun;
+
+    private HeadlessConfig(Properties properties, boolean dryRun) {
+        this.properties = properties;
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * @throws IllegalArgumentException for malformed or unknown options and invalid values
+     * @throws UncheckedIOException if the config file cannot be read
+     */
+    public static HeadlessConfig fromArgs(String... args) {
+        Properties options = new Properties();
+        boolean dryRun = false;
+        for (String arg : args) {
+            if (arg.equals(HEADLESS_FLAG)) {
+                continue;
+            }
+            if (arg.equals(DRY_RUN_FLAG)) {
+                dryRun = true;
+                continue;
+            }
+            int split = arg.indexOf('=');
+            if (!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Expected --key=value but got " + arg);
+            }
+            options.setProperty(arg.substring(2, split), arg.substring(split + 1));
+        }
+
+        Properties properties = new Properties();
+        String configFile = (String) options.remove(CONFIG);
+        if (configFile != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(configFile), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("Unable to read config file " + configFile, ioe);
+            }
+        }
+        properties.putAll(options);
+
+        for (String key : properties.stringPropertyNames()) {
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown option " + key);
+            }
+        }
+        HeadlessConfig config = new HeadlessConfig(properties, dryRun);
+        //fail on bad values now rather than halfway through startup
+        config.getRepositoryType();
+        config.getDurabilityMode();
+        config.getFlushInterval();
+        config.getImageCacheSize();
+        config.getPort();
+        config.getBinaryPort();
+        return config;
+    }
+
+    public RepositoryType getRepositoryType() {
+        return parseEnum(RepositoryType.class, "repository", "journal");
+    }
+
+    /**
+     * @return The configured journal file, or null for the repository's default location
+     */
+    public Path getJournalPath() {
+        String journal = properties.getProperty("journal");
+        return journal == null ? null : Paths.get(journal);
+    }
+
+    /**
+     * @return How the write-behind cache writes to the repository, or null for no cache
+     */
+    public DurabilityMode getDurabilityMode() {
+        return properties.containsKey("durability") ? parseEnum(DurabilityMode.class, "durability", null) : null;
+    }
+
+    public Duration getFlushInterval() {
+        String value = properties.getProperty("flushInterval", "1000");
+        try {
+            long millis = Long.parseLong(value);
+            if (millis <= 0) {
+                throw new IllegalArgumentException("flushInterval must be positive: " + value);
+            }
+            return Duration.ofMillis(millis);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("flushInterval is not a number: " + value, e);
+        }
+    }
+
+    /**
+     * @return "fake", "local", or the class name of the ImageService to use
+     */
+    public String getImageService() {
+        return properties.getProperty("image", "fake");
+    }
+
+    /**
+     * @return Capacity of the image result cache, or 0 to call the image service for every frame
+     */
+    public int getImageCacheSize() {
+        String value = properties.getProperty("imageCache", String.valueOf(CachingImageService.DEFAULT_CAPACITY));
+        try {
+            int size = Integer.parseInt(value);
+            if (size < 0) {
+                throw new IllegalArgumentException("imageCache must not be negative: " + value);
+            }
+            return size;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("imageCache is not a number: " + value, e);
+        }
+    }
+
+    public boolean isMotionGate() {
+        return Boolean.parseBoolean(properties.getProperty("motionGate", "true"));
+    }
+
+    public boolean isLogEvents() {
+        return Boolean.parseBoolean(properties.getProperty("logEvents", "true"));
+    }
+
+    /**
+     * @return The port to listen for gateways on, or -1 to not listen
+     */
+    public int getPort() {
+        return parsePort("port");
+    }
+
+    /**
+     * @return The port to listen for binary frame streams on, or -1 to not listen
+     */
+    public int getBinaryPort() {
+        return parsePort("binaryPort");
+    }
+
+    private int parsePort(String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            int port = Integer.parseInt(value);
+            if (port < 0 || port > 65535) {
+                throw new IllegalArgumentException(key + " out of range: " + value);
+            }
+            return port;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a number: " + value, e);
+        }
+    }
+
+    public String getBindAddress() {
+        return properties.getProperty("bind", "127.0.0.1");
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    private <E extends Enum<E>> E parseEnum(Class<E> type, String key, String defaultValue) {
+        String value = properties.getProperty(key, defaultValue);
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value, e);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.udacity.catpoint.security.application;
 
-import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.service.SecurityEventType;
 import com.udacity.catpoint.security.service.SecurityService;
 import net.miginfocom.swing.MigLayout;
 
@@ -10,11 +10,13 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /** Panel containing the 'camera' output. Allows users to 'refresh' the camera
  * by uploading their own picture, and 'scan' the picture, sending it for image analysis
  */
-public class ImagePanel extends JPanel implements StatusListener {
+public class ImagePanel extends JPanel {
     private SecurityService securityService;
 
     private JLabel cameraHeader;
@@ -28,7 +30,7 @@ public class ImagePanel extends JPanel implements StatusListener {
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
-        securityService.addStatusListener(this);
+        securityService.getEventBus().subscribe(SecurityEventType.CAT_DETECTED, this::showCatDetected);
 
         cameraHeader = new JLabel("Camera Feed");
         cameraHeader.setFont(StyleService.HEADING_FONT);
@@ -61,7 +63,14 @@ public class ImagePanel extends JPanel implements StatusListener {
         //button that sends the image to the image service
         JButton scanPictureButton = new JButton("Scan Picture");
         scanPictureButton.addActionListener(e -> {
-            securityService.processImage(currentCameraImage);
+            //classified off the event thread; the alarm is updated when the result arrives
+            securityService.processImage(currentCameraImage).whenComplete((cat, failure) -> {
+                if (failure != null) {
+                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, cause instanceof RejectedExecutionException
+                            ? "Still scanning earlier pictures." : "Picture scan failed: " + cause.getMessage()));
+                }
+            });
         });
 
         add(cameraHeader, "span 3, wrap");
@@ -70,22 +79,11 @@ public class ImagePanel extends JPanel implements StatusListener {
         add(scanPictureButton);
     }
 
-    @Override
-    public void notify(AlarmStatus status) {
-        //no behavior necessary
-    }
-
-    @Override
-    public void catDetected(boolean catDetected) {
+    private void showCatDetected(boolean catDetected) {
         if(catDetected) {
             cameraHeader.setText("DANGER - CAT DETECTED");
         } else {
-        cameraHeader.setText("Camera Feed - No Cats Detected");
-    }
-}
-
-    @Override
-    public void sensorStatusChanged() {
-        //no behavior necessary
+            cameraHeader.setText("Camera Feed - No Cats Detected");
+        }
     }
 }
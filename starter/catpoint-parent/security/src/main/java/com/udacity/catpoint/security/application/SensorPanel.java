@@ -1,8 +1,8 @@
 package com.udacity.catpoint.security.application;
 
-import com.udacity.catpoint.security.data.AlarmStatus;
 import com.udacity.catpoint.security.data.Sensor;
 import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.service.SecurityEventType;
 import com.udacity.catpoint.security.service.SecurityService;
 import net.miginfocom.swing.MigLayout;
 import javax.swing.*;
@@ -11,7 +11,7 @@ import javax.swing.*;
  * Panel that allows users to add sensors to their system. Sensors may be
  * manually set to "active" and "inactive" to test the system.
  */
-public class SensorPanel extends JPanel implements StatusListener{
+public class SensorPanel extends JPanel {
 
     private SecurityService securityService;
 
@@ -29,7 +29,7 @@ public class SensorPanel extends JPanel implements StatusListener{
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
-        securityService.addStatusListener(this);
+        securityService.getEventBus().subscribe(SecurityEventType.SENSORS_CHANGED, sensors -> updateSensorList(sensorListPanel));
 
 
         panelLabel.setFont(StyleService.HEADING_FONT);
@@ -118,19 +118,4 @@ public class SensorPanel extends JPanel implements StatusListener{
         securityService.removeSensor(sensor);
         updateSensorList(sensorListPanel);
     }
-
-    @Override
-    public void notify(AlarmStatus status) {
-        // no behavior necessary
-    }
-
-    @Override
-    public void catDetected(boolean catDetected) {
-        // no behavior necessary
-    }
-
-    @Override
-    public void sensorStatusChanged() {
-        updateSensorList(sensorListPanel);
-    }
 }
@@ -7,23 +7,26 @@ import java.awt.*;
  * text and color is associated with the alarm.
  */
 public enum AlarmStatus {
-    NO_ALARM("Cool and Good", new Color(120,200,30)),
-    PENDING_ALARM("I'm in Danger...", new Color(200,150,20)),
-    ALARM("Awooga!", new Color(250,80,50));
+    NO_ALARM("Cool and Good", 0x78C81E),
+    PENDING_ALARM("I'm in Danger...", 0xC89614),
+    ALARM("Awooga!", 0xFA5032);
 
     private final String description;
-    private final Color color;
+    private final int rgb;
 
-    AlarmStatus(String description, Color color) {
+    AlarmStatus(String description, int rgb) {
         this.description = description;
-        this.color = color;
+        this.rgb = rgb;
     }
 
     public String getDescription() {
         return description;
     }
 
+    /**
+     * Created on demand, like {@link ArmingStatus#getColor()}.
+     */
     public Color getColor() {
-        return color;
+        return new Color(rgb);
     }
 }
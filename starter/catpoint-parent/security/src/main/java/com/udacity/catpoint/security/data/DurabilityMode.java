@@ -0,0 +1,11 @@
+package com.udacity.catpoint.security.data;
+
+/**
+ * How eagerly a write-behind repository hands changes to its backing store.
+ */
+public enum DurabilityMode {
+    /** Every change is written to the backing store before the call returns. */
+    SYNC,
+    /** Changes are only marked dirty and flushed together as one merged update on a fixed interval. */
+    COALESCED
+}
@@ -0,0 +1,97 @@
+package com.udacity.catpoint.security.data;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Repository implementation that only keeps state in local memory. Nothing is persisted by the
+ * repository itself; whoever owns it decides when to save it, for example
+ * {@link PartitionedHomeStore} when a home is paged out. Unlike
+ * {@link PretendDatabaseSecurityRepositoryImpl} it shares nothing with other instances, so any
+ * number of them can live in one JVM.
+ */
+public class InMemorySecurityRepositoryImpl implements SecurityRepository {
+
+    private final SensorIndex sensors = new SensorIndex();
+    private AlarmStatus alarmStatus;
+    private ArmingStatus armingStatus;
+
+    /**
+     * Creates an empty repository: no sensors, disarmed and no alarm.
+     */
+    public InMemorySecurityRepositoryImpl() {
+        this(AlarmStatus.NO_ALARM, ArmingStatus.DISARMED, Set.of());
+    }
+
+    public InMemorySecurityRepositoryImpl(AlarmStatus alarmStatus, ArmingStatus armingStatus, Collection<Sensor> sensors) {
+        this.alarmStatus = alarmStatus;
+        this.armingStatus = armingStatus;
+        sensors.forEach(this.sensors::put);
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors.put(sensor);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors.remove(sensor);
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors.put(sensor);
+    }
+
+    @Override
+    public synchronized Collection<Sensor> resetAllSensors() {
+        return sensors.deactivateAll();
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors.all();
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return sensors.get(sensorId);
+    }
+
+    @Override
+    public Set<Sensor> getSensors(SensorType sensorType) {
+        return sensors.ofType(sensorType);
+    }
+
+    @Override
+    public Set<Sensor> getActiveSensors(SensorType sensorType) {
+        return sensors.activeOfType(sensorType);
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensors.activeCount();
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+}
@@ -0,0 +1,362 @@
+package com.udacity.catpoint.security.data;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository implementation that keeps state in local memory and records every change as one
+ * small line in an append-only journal file. The journal is replayed on startup to rebuild the
+ * state, so updating a single sensor costs one short write no matter how many sensors exist.
+ * <p>
+ * A background compactor periodically writes a binary {@link SensorSnapshotFile} of the whole
+ * state next to the journal and then truncates the journal, so startup only has to load the
+ * snapshot plus the short tail of changes made since the last compaction.
+ */
+public class JournalSecurityRepositoryImpl implements SecurityRepository, AutoCloseable {
+
+    private final SensorIndex sensors = new SensorIndex();
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    //journal record types
+    private static final String ADD_SENSOR = "ADD";
+    private static final String REMOVE_SENSOR = "REMOVE";
+    private static final String UPDATE_SENSOR = "UPDATE";
+    private static final String RESET_SENSORS = "RESET";
+    private static final String ALARM_STATUS = "ALARM";
+    private static final String ARMING_STATUS = "ARMING";
+    private static final char SEPARATOR = '\t';
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final Path DEFAULT_JOURNAL = Paths.get(System.getProperty("user.home"), ".catpoint", "security.journal");
+    private static final Duration DEFAULT_COMPACTION_INTERVAL = Duration.ofMinutes(5);
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+    private static final Gson gson = SensorTypeAdapter.createGson(); //used to serialize sensors into JSON
+
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final int compactionThreshold;
+    private final ScheduledExecutorService compactor;
+    private BufferedWriter journal;
+    private int journalRecords;
+
+    public JournalSecurityRepositoryImpl() {
+        this(DEFAULT_JOURNAL);
+    }
+
+    /**
+     * Opens the journal at the given path, compacting it on the default schedule.
+     * @param journalPath File holding the journal. Created along with its parent directories if missing.
+     */
+    public JournalSecurityRepositoryImpl(Path journalPath) {
+        this(journalPath, DEFAULT_COMPACTION_INTERVAL, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Loads the latest snapshot, replays the journal records written after it and starts the compactor.
+     * @param journalPath File holding the journal. The snapshot is kept beside it with a ".snapshot" suffix.
+     * @param compactionInterval How often the compactor checks whether the journal needs compacting
+     * @param compactionThreshold Minimum number of journal records before a compaction is worth doing
+     */
+    public JournalSecurityRepositoryImpl(Path journalPath, Duration compactionInterval, int compactionThreshold) {
+        this.journalPath = journalPath;
+        this.snapshotPath = journalPath.resolveSibling(journalPath.getFileName() + SNAPSHOT_SUFFIX);
+        this.compactionThreshold = compactionThreshold;
+        try {
+            if (journalPath.getParent() != null) {
+                Files.createDirectories(journalPath.getParent());
+            }
+            loadSnapshot();
+            replay();
+            journal = openJournal(StandardOpenOption.APPEND);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to open security journal " + journalPath, ioe);
+        }
+
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "security-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = compactionInterval.toMillis();
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private BufferedWriter openJournal(StandardOpenOption mode) throws IOException {
+        return Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (Files.notExists(snapshotPath)) {
+            return;
+        }
+        SensorSnapshotFile.Reader snapshot = SensorSnapshotFile.read(snapshotPath);
+        alarmStatus = snapshot.getAlarmStatus();
+        armingStatus = snapshot.getArmingStatus();
+        for (int i = 0; i < snapshot.size(); i++) {
+            sensors.put(snapshot.getSensor(i));
+        }
+    }
+
+    /**
+     * Applies every journal record in order on top of the snapshot. Sensors are indexed by id, so
+     * a rename recorded by a later update still replaces the original entry.
+     * <p>
+     * A last line without its newline is a record torn by an unclean shutdown. It is skipped and
+     * cut off the file, so the next record is appended on a line of its own instead of being
+     * glued onto the torn bytes and lost on the following restart.
+     */
+    private void replay() throws IOException {
+        if (Files.notExists(journalPath)) {
+            return;
+        }
+        long complete = 0; //bytes up to and including the last newline
+        try (InputStream in = Files.newInputStream(journalPath)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            long offset = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        line.write(buffer, start, i - start);
+                        replayLine(line.toString(StandardCharsets.UTF_8));
+                        line.reset();
+                        start = i + 1;
+                        complete = offset + i + 1;
+                    }
+                }
+                line.write(buffer, start, read - start);
+                offset += read;
+            }
+        }
+        if (Files.size(journalPath) > complete) {
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                channel.truncate(complete);
+                channel.force(true);
+            }
+        }
+    }
+
+    private void replayLine(String line) {
+        journalRecords++;
+        int split = line.indexOf(SEPARATOR);
+        if (split < 0) {
+            return; //nothing usable on this line
+        }
+        int end = line.endsWith("\r") ? line.length() - 1 : line.length();
+        try {
+            apply(line.substring(0, split), line.substring(split + 1, end));
+        } catch (JsonParseException | IllegalArgumentException e) {
+            //skip records that did not make it to disk intact
+        }
+    }
+
+    private void apply(String type, String payload) {
+        switch (type) {
+            case ADD_SENSOR, UPDATE_SENSOR -> sensors.put(gson.fromJson(payload, Sensor.class));
+            case REMOVE_SENSOR -> {
+                Sensor removed = sensors.get(UUID.fromString(payload));
+                if (removed != null) {
+                    sensors.remove(removed);
+                }
+            }
+            case RESET_SENSORS -> sensors.deactivateAll();
+            case ALARM_STATUS -> alarmStatus = AlarmStatus.valueOf(payload);
+            case ARMING_STATUS -> armingStatus = ArmingStatus.valueOf(payload);
+        }
+    }
+
+    /**
+     * Appends one record to the journal and pushes it to the operating system.
+     */
+    private synchronized void append(String type, String payload) {
+        try {
+            write(type, payload);
+            journal.flush();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to write to security journal " + journalPath, ioe);
+        }
+    }
+
+    private void write(String type, String payload) throws IOException {
+        journal.write(type);
+        journal.write(SEPARATOR);
+        journal.write(payload);
+        journal.newLine();
+        journalRecords++;
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors.put(sensor);
+        append(ADD_SENSOR, gson.toJson(sensor));
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors.remove(sensor);
+        append(REMOVE_SENSOR, sensor.getSensorId().toString());
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors.put(sensor);
+        append(UPDATE_SENSOR, gson.toJson(sensor));
+    }
+
+    /**
+     * Writes one record per sensor but pushes them to the operating system together.
+     */
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> updated) {
+        try {
+            for (Sensor sensor : updated) {
+                sensors.put(sensor);
+                write(UPDATE_SENSOR, gson.toJson(sensor));
+            }
+            journal.flush();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to write to security journal " + journalPath, ioe);
+        }
+    }
+
+    /**
+     * Recorded as one RESET record, however many sensors were active.
+     */
+    @Override
+    public synchronized Collection<Sensor> resetAllSensors() {
+        Collection<Sensor> deactivated = sensors.deactivateAll();
+        append(RESET_SENSORS, "");
+        return deactivated;
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        append(ALARM_STATUS, alarmStatus.toString());
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        append(ARMING_STATUS, armingStatus.toString());
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors.all();
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return sensors.get(sensorId);
+    }
+
+    @Override
+    public Set<Sensor> getSensors(SensorType sensorType) {
+        return sensors.ofType(sensorType);
+    }
+
+    @Override
+    public Set<Sensor> getActiveSensors(SensorType sensorType) {
+        return sensors.activeOfType(sensorType);
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensors.activeCount();
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    private void compactIfNeeded() {
+        try {
+            synchronized (this) {
+                if (journalRecords >= compactionThreshold) {
+                    compact();
+                }
+            }
+        } catch (UncheckedIOException e) {
+            //keep the journal as it is and try again on the next run
+        }
+    }
+
+    /**
+     * Writes a snapshot of the current state and truncates the journal. The snapshot is written to a
+     * temporary file, forced to disk and moved into place, and the move is forced to disk through
+     * the directory before the journal is truncated, so a crash or power loss at any point leaves
+     * either the old snapshot with the full journal or the new snapshot with a journal whose replay
+     * ends in the same state. Where the platform cannot force a directory, the move is only as
+     * durable as its file system makes renames.
+     */
+    public synchronized void compact() {
+        try {
+            Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            SensorSnapshotFile.write(tmp, alarmStatus, armingStatus, sensors.all());
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(snapshotPath.toAbsolutePath().getParent());
+
+            journal.close();
+            journal = openJournal(StandardOpenOption.TRUNCATE_EXISTING);
+            journalRecords = 0;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to compact security journal " + journalPath, ioe);
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //directories cannot be opened or forced on some platforms, Windows among them
+        }
+    }
+
+    /**
+     * Stops the compactor, compacts one last time so the next startup only reads the snapshot,
+     * and closes the journal.
+     */
+    @Override
+    public synchronized void close() {
+        compactor.shutdownNow();
+        if (journalRecords > 0) {
+            compact();
+        }
+        try {
+            journal.close();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to close security journal " + journalPath, ioe);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.udacity.catpoint.security.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * Storage for many homes, each saved as its own {@link SensorSnapshotFile}. Homes are spread over
+ * a fixed number of partition directories by a hash of their id, so no directory grows to hold
+ * every home, and saving or loading one home never touches another home's file.
+ * <p>
+ * The store does no locking of its own: callers must not save and load the same home at the same
+ * time. Different homes can be saved and loaded concurrently.
+ */
+public class PartitionedHomeStore {
+
+    public static final int DEFAULT_PARTITIONS = 256;
+
+    private static final Pattern HOME_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final Path root;
+    private final int partitions;
+
+    public PartitionedHomeStore(Path root) {
+        this(root, DEFAULT_PARTITIONS);
+    }
+
+    /**
+     * @param root Directory the partition directories are created in
+     * @param partitions Number of partition directories. Must stay the same for the life of the store.
+     */
+    public PartitionedHomeStore(Path root, int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Partitions must be positive: " + partitions);
+        }
+        this.root = root;
+        this.partitions = partitions;
+    }
+
+    /**
+     * @throws IllegalArgumentException unless the id is 1 to 64 letters, digits, '_' or '-', so
+     * it can be used as a file name as it is
+     */
+    public static void checkHomeId(String homeId) {
+        if (homeId == null || !HOME_ID.matcher(homeId).matches()) {
+            throw new IllegalArgumentException("Invalid home id: " + homeId);
+        }
+    }
+
+    Path pathFor(String homeId) {
+        checkHomeId(homeId);
+        String partition = String.format("p%03d", Math.floorMod(homeId.hashCode(), partitions));
+        return root.resolve(partition).resolve(homeId + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * @return A new repository holding the saved state of the home, or an empty repository if
+     * the home has never been saved
+     */
+    public InMemorySecurityRepositoryImpl load(String homeId) {
+        Path path = pathFor(homeId);
+        if (Files.notExists(path)) {
+            return new InMemorySecurityRepositoryImpl();
+        }
+        try {
+            SensorSnapshotFile.Reader snapshot = SensorSnapshotFile.read(path);
+            return new InMemorySecurityRepositoryImpl(snapshot.getAlarmStatus(), snapshot.getArmingStatus(), snapshot.getSensors());
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to load home " + homeId, ioe);
+        }
+    }
+
+    /**
+     * Saves the current state of the repository as the state of the home. The snapshot is written to
+     * a temporary file and moved into place, so a crash leaves either the old or the new state.
+     */
+    public void save(String homeId, SecurityRepository repository) {
+        Path path = pathFor(homeId);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            SensorSnapshotFile.write(tmp, repository.getAlarmStatus(), repository.getArmingStatus(), repository.getSensors());
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to save home " + homeId, ioe);
+        }
+    }
+}
@@ -1,66 +1,122 @@
 package com.udacity.catpoint.security.data;
 
-import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.UUID;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
 /**
  * Fake repository implementation for demo purposes. Stores state information in local
  * memory and writes it to user preferences between app loads. This implementation is
  * intentionally a little hard to use in unit tests, so watch out!
+ * <p>
+ * Each sensor is stored under its own key, its sensorId, in a child preferences node. That keeps
+ * every value far below {@link Preferences#MAX_VALUE_LENGTH} however many sensors there are, and
+ * an update only rewrites the entry of the sensor that changed.
  */
 public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository{
 
-    private Set<Sensor> sensors;
+    private final SensorIndex sensors = new SensorIndex();
     private AlarmStatus alarmStatus;
     private ArmingStatus armingStatus;
 
     //preference keys
-    private static final String SENSORS = "SENSORS";
+    private static final String SENSORS = "SENSORS"; //legacy key holding every sensor in one JSON string
+    private static final String SENSOR_NODE = "sensors";
     private static final String ALARM_STATUS = "ALARM_STATUS";
     private static final String ARMING_STATUS = "ARMING_STATUS";
 
-    private static final Preferences prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
-    private static final Gson gson = new Gson(); //used to serialize objects into JSON
+    private static final SensorTypeAdapter sensorAdapter = new SensorTypeAdapter();
+    private static final Gson gson = SensorTypeAdapter.createGson(); //used to serialize objects into JSON
+
+    private final Preferences prefs;
+    private final Preferences sensorPrefs;
 
     public PretendDatabaseSecurityRepositoryImpl() {
+        this(Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class));
+    }
+
+    /**
+     * @param prefs Node the state is stored in, so tests can use a throwaway one
+     */
+    PretendDatabaseSecurityRepositoryImpl(Preferences prefs) {
+        this.prefs = prefs;
+        this.sensorPrefs = prefs.node(SENSOR_NODE);
+
         //load system state from prefs, or else default
         alarmStatus = AlarmStatus.valueOf(prefs.get(ALARM_STATUS, AlarmStatus.NO_ALARM.toString()));
         armingStatus = ArmingStatus.valueOf(prefs.get(ARMING_STATUS, ArmingStatus.DISARMED.toString()));
 
+        migrateLegacySensors();
+
         //we've serialized our sensor objects for storage, which should be a good warning sign that
         // this is likely an impractical solution for a real system
+        try {
+            for (String sensorId : sensorPrefs.keys()) {
+                String sensorString = sensorPrefs.get(sensorId, null);
+                if (sensorString != null) {
+                    sensors.put(gson.fromJson(sensorString, Sensor.class));
+                }
+            }
+        } catch (BackingStoreException e) {
+            //same as an unavailable value for prefs.get: start without any stored sensors
+        }
+    }
+
+    /**
+     * Moves sensors saved by older versions under the single SENSORS key into one entry per sensor,
+     * then drops the old key so the migration only ever runs once.
+     */
+    private void migrateLegacySensors() {
         String sensorString = prefs.get(SENSORS, null);
-        if(sensorString == null) {
-            sensors = new TreeSet<>();
-        } else {
-            Type type = new TypeToken<Set<Sensor>>() {
-            }.getType();
-            sensors = gson.fromJson(sensorString, type);
+        if (sensorString == null) {
+            return;
+        }
+        try {
+            sensorAdapter.readAll(new StringReader(sensorString), this::storeSensor);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to migrate stored sensors", ioe);
         }
+        prefs.remove(SENSORS);
+    }
+
+    private void storeSensor(Sensor sensor) {
+        sensorPrefs.put(sensor.getSensorId().toString(), gson.toJson(sensor));
     }
 
     @Override
     public void addSensor(Sensor sensor) {
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        sensors.put(sensor);
+        storeSensor(sensor);
     }
 
     @Override
     public void removeSensor(Sensor sensor) {
         sensors.remove(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        sensorPrefs.remove(sensor.getSensorId().toString());
     }
 
     @Override
     public void updateSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        sensors.put(sensor);
+        storeSensor(sensor);
+    }
+
+    /**
+     * Only the entries of sensors that were active are rewritten.
+     */
+    @Override
+    public Collection<Sensor> resetAllSensors() {
+        List<Sensor> deactivated = sensors.deactivateAll();
+        deactivated.forEach(this::storeSensor);
+        return deactivated;
     }
 
     @Override
@@ -77,7 +133,27 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
 
     @Override
     public Set<Sensor> getSensors() {
-        return sensors;
+        return sensors.all();
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return sensors.get(sensorId);
+    }
+
+    @Override
+    public Set<Sensor> getSensors(SensorType sensorType) {
+        return sensors.ofType(sensorType);
+    }
+
+    @Override
+    public Set<Sensor> getActiveSensors(SensorType sensorType) {
+        return sensors.activeOfType(sensorType);
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensors.activeCount();
     }
 
     @Override
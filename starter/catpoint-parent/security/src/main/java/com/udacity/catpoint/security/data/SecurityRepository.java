@@ -1,6 +1,8 @@
 package com.udacity.catpoint.security.data;
 
+import java.util.Collection;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * Interface showing the methods our security repository will need to support
@@ -9,11 +11,51 @@ public interface SecurityRepository {
     void addSensor(Sensor sensor);
     void removeSensor(Sensor sensor);
     void updateSensor(Sensor sensor);
+
+    /**
+     * Updates several sensors at once. Implementations that persist the whole sensor set should
+     * override this so the batch costs a single write instead of one per sensor.
+     * @param sensors The sensors to update
+     */
+    default void updateSensors(Collection<Sensor> sensors) {
+        sensors.forEach(this::updateSensor);
+    }
+
+    /**
+     * Sets every active sensor inactive as a single state change, persisted with a single write
+     * where the storage format allows it.
+     * @return The sensors that were active before the reset
+     */
+    Collection<Sensor> resetAllSensors();
+
     void setAlarmStatus(AlarmStatus alarmStatus);
     void setArmingStatus(ArmingStatus armingStatus);
     Set<Sensor> getSensors();
+
+    /**
+     * @return The sensor with the given id, or null if there is none
+     */
+    Sensor getSensor(UUID sensorId);
+
+    /**
+     * @return All sensors of the given type, read straight from the type index
+     */
+    Set<Sensor> getSensors(SensorType sensorType);
+
+    /**
+     * @return The currently active sensors of the given type, read straight from the type index
+     */
+    Set<Sensor> getActiveSensors(SensorType sensorType);
     AlarmStatus getAlarmStatus();
     ArmingStatus getArmingStatus();
 
+    /**
+     * @return Number of sensors currently active. Implementations keep this up to date as sensors
+     * are added, removed and updated, so it never requires a scan of all sensors.
+     */
+    int getActiveSensorCount();
 
+    default boolean anySensorActive() {
+        return getActiveSensorCount() > 0;
+    }
 }
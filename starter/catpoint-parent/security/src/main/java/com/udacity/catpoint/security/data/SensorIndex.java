@@ -0,0 +1,159 @@
+package com.udacity.catpoint.security.data;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * In-memory sensor store shared by the repository implementations. Sensors are kept in a primary
+ * index by sensorId, with secondary indexes by {@link SensorType} for all and for active sensors,
+ * so lookups such as "all active MOTION sensors" are direct reads instead of scans.
+ * <p>
+ * Sensors are mutable and are usually changed before the repository hears about it, so each
+ * entry remembers the type and activation it was indexed under. That way {@link #put(Sensor)}
+ * can move a sensor between secondary indexes after a rename, type change or (de)activation.
+ * Not thread safe; callers synchronize as needed.
+ */
+class SensorIndex {
+
+    private final Map<UUID, Entry> byId = new HashMap<>();
+    private final Map<SensorType, Set<Sensor>> byType = new EnumMap<>(SensorType.class);
+    private final Map<SensorType, Set<Sensor>> activeByType = new EnumMap<>(SensorType.class);
+    private final Set<Sensor> active = new HashSet<>();
+    private final Set<Sensor> all = new SensorView();
+
+    private static class Entry {
+        private final Sensor sensor;
+        private final SensorType type;
+        private final boolean active;
+
+        private Entry(Sensor sensor) {
+            this.sensor = sensor;
+            this.type = sensor.getSensorType();
+            this.active = Boolean.TRUE.equals(sensor.getActive());
+        }
+    }
+
+    SensorIndex() {
+        for (SensorType type : SensorType.values()) {
+            byType.put(type, new HashSet<>());
+            activeByType.put(type, new HashSet<>());
+        }
+    }
+
+    /**
+     * Adds the sensor, or re-indexes it if a sensor with the same id is already present.
+     */
+    void put(Sensor sensor) {
+        unindex(byId.get(sensor.getSensorId()));
+        Entry entry = new Entry(sensor);
+        byId.put(sensor.getSensorId(), entry);
+        if (entry.type != null) {
+            byType.get(entry.type).add(sensor);
+        }
+        if (entry.active) {
+            active.add(sensor);
+            if (entry.type != null) {
+                activeByType.get(entry.type).add(sensor);
+            }
+        }
+    }
+
+    void remove(Sensor sensor) {
+        unindex(byId.remove(sensor.getSensorId()));
+    }
+
+    private void unindex(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        if (entry.type != null) {
+            byType.get(entry.type).remove(entry.sensor);
+            activeByType.get(entry.type).remove(entry.sensor);
+        }
+        active.remove(entry.sensor);
+    }
+
+    /**
+     * Sets every active sensor inactive and re-indexes it. Only touches the active sensors.
+     * @return The sensors that were deactivated
+     */
+    List<Sensor> deactivateAll() {
+        List<Sensor> deactivated = new ArrayList<>(active);
+        for (Sensor sensor : deactivated) {
+            sensor.setActive(false);
+            put(sensor);
+        }
+        return deactivated;
+    }
+
+    Sensor get(UUID sensorId) {
+        Entry entry = byId.get(sensorId);
+        return entry == null ? null : entry.sensor;
+    }
+
+    /**
+     * @return Read-only live view of every sensor
+     */
+    Set<Sensor> all() {
+        return all;
+    }
+
+    Set<Sensor> ofType(SensorType type) {
+        return Collections.unmodifiableSet(byType.get(type));
+    }
+
+    Set<Sensor> activeOfType(SensorType type) {
+        return Collections.unmodifiableSet(activeByType.get(type));
+    }
+
+    /**
+     * @return Read-only live view of the active sensors
+     */
+    Set<Sensor> active() {
+        return Collections.unmodifiableSet(active);
+    }
+
+    int activeCount() {
+        return active.size();
+    }
+
+    /**
+     * Set view over the primary index, so getSensors() neither copies nor compares names.
+     */
+    private class SensorView extends AbstractSet<Sensor> {
+        @Override
+        public Iterator<Sensor> iterator() {
+            Iterator<Entry> entries = byId.values().iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Sensor next() {
+                    return entries.next().sensor;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return byId.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Sensor && byId.containsKey(((Sensor) o).getSensorId());
+        }
+    }
+}
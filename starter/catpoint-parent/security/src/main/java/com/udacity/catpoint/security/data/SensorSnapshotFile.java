@@ -0,0 +1,252 @@
+package com.udacity.catpoint.security.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary file holding the alarm status, arming status and every sensor of a repository.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ * header   magic(int) version(short) alarmStatus(byte) armingStatus(byte) sensorCount(int) nameCount(int)
+ * records  sensorCount fixed-width records of RECORD_BYTES each:
+ *          idMostSigBits(long) idLeastSigBits(long) nameIndex(int) sensorType(byte) flags(byte) padding(short)
+ * names    nameCount entries of byteLength(int) followed by the UTF-8 bytes
+ * </pre>
+ * Enums are stored by ordinal, with -1 standing in for null, and the active flag is bit 0 of flags.
+ * Identical names share one entry in the name table. {@link #open(Path)} reads the file through a
+ * {@link MappedByteBuffer}, so a {@link Reader} can scan ids, types and active flags of millions
+ * of sensors without copying the file or decoding any names. A snapshot that is about to be
+ * replaced should be loaded with {@link #read(Path)} instead, which leaves no mapping behind to
+ * stop the file being moved over on platforms that lock mapped files.
+ */
+public final class SensorSnapshotFile {
+
+    public static final int MAGIC = 0x43415453; //"CATS"
+    public static final short VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_BYTES = 24;
+
+    private static final int NO_NAME = -1;
+    private static final byte NULL_ORDINAL = -1;
+    private static final byte ACTIVE_FLAG = 1;
+
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+
+    private SensorSnapshotFile() {}
+
+    /**
+     * Writes the given state to a new snapshot file, replacing anything already at that path. The
+     * file is forced to the storage device before this returns.
+     */
+    public static void write(Path path, AlarmStatus alarmStatus, ArmingStatus armingStatus, Collection<Sensor> sensors) throws IOException {
+        Map<String, Integer> nameIndexes = new HashMap<>();
+        List<byte[]> names = new ArrayList<>();
+        int nameBytes = 0;
+        for (Sensor sensor : sensors) {
+            String name = sensor.getName();
+            if (name != null && !nameIndexes.containsKey(name)) {
+                byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+                nameIndexes.put(name, names.size());
+                names.add(encoded);
+                nameBytes += Integer.BYTES + encoded.length;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + sensors.size() * RECORD_BYTES + nameBytes);
+        buffer.putInt(MAGIC)
+                .putShort(VERSION)
+                .put(ordinal(alarmStatus))
+                .put(ordinal(armingStatus))
+                .putInt(sensors.size())
+                .putInt(names.size());
+        for (Sensor sensor : sensors) {
+            UUID id = sensor.getSensorId();
+            buffer.putLong(id.getMostSignificantBits())
+                    .putLong(id.getLeastSignificantBits())
+                    .putInt(sensor.getName() == null ? NO_NAME : nameIndexes.get(sensor.getName()))
+                    .put(ordinal(sensor.getSensorType()))
+                    .put(Boolean.TRUE.equals(sensor.getActive()) ? ACTIVE_FLAG : 0)
+                    .putShort((short) 0);
+        }
+        for (byte[] name : names) {
+            buffer.putInt(name.length).put(name);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Maps the snapshot file into memory. The mapping stays valid after the file is closed.
+     * @throws IOException if the file cannot be read or is not a snapshot of a supported version
+     */
+    public static Reader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the whole snapshot file into memory and closes it.
+     * @throws IOException if the file cannot be read or is not a snapshot of a supported version
+     */
+    public static Reader read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Sensor snapshot file too large: " + channel.size() + " bytes");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                //keep reading until the buffer is full or the file ends early
+            }
+            return new Reader(buffer.flip());
+        }
+    }
+
+    private static byte ordinal(Enum<?> value) {
+        return value == null ? NULL_ORDINAL : (byte) value.ordinal();
+    }
+
+    private static <T> T fromOrdinal(T[] values, byte ordinal) {
+        return ordinal == NULL_ORDINAL ? null : values[ordinal];
+    }
+
+    /**
+     * Random access view over a snapshot, mapped or read into memory. Individual fields are read
+     * straight out of the buffer; only {@link #getName(int)} and {@link #getSensor(int)} allocate.
+     * Every offset, name index and enum ordinal is checked when the reader is created, so a
+     * truncated or corrupt file is rejected up front instead of failing on a later read.
+     */
+    public static final class Reader {
+        private final ByteBuffer buffer;
+        private final int sensorCount;
+        private final int[] nameOffsets;
+
+        private Reader(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a sensor snapshot file");
+            }
+            if (buffer.getShort(4) != VERSION) {
+                throw new IOException("Unsupported sensor snapshot version " + buffer.getShort(4));
+            }
+            checkOrdinal(ALARM_STATUSES, buffer.get(6), "alarm status");
+            checkOrdinal(ARMING_STATUSES, buffer.get(7), "arming status");
+            sensorCount = buffer.getInt(8);
+            int nameCount = buffer.getInt(12);
+            long namesStart = HEADER_BYTES + (long) sensorCount * RECORD_BYTES;
+            if (sensorCount < 0 || nameCount < 0 || namesStart + (long) nameCount * Integer.BYTES > buffer.limit()) {
+                throw new IOException("Truncated sensor snapshot file: " + sensorCount + " sensors and " + nameCount
+                        + " names do not fit in " + buffer.limit() + " bytes");
+            }
+
+            nameOffsets = new int[nameCount];
+            int offset = (int) namesStart;
+            for (int i = 0; i < nameCount; i++) {
+                if (offset > buffer.limit() - Integer.BYTES) {
+                    throw new IOException("Truncated sensor snapshot file: name " + i + " starts past the end");
+                }
+                int length = buffer.getInt(offset);
+                if (length < 0 || length > buffer.limit() - offset - Integer.BYTES) {
+                    throw new IOException("Corrupt sensor snapshot file: name " + i + " has length " + length);
+                }
+                nameOffsets[i] = offset;
+                offset += Integer.BYTES + length;
+            }
+
+            for (int i = 0; i < sensorCount; i++) {
+                int nameIndex = buffer.getInt(record(i) + 16);
+                if (nameIndex != NO_NAME && (nameIndex < 0 || nameIndex >= nameCount)) {
+                    throw new IOException("Corrupt sensor snapshot file: sensor " + i + " has name index " + nameIndex);
+                }
+                checkOrdinal(SENSOR_TYPES, buffer.get(record(i) + 20), "sensor type");
+            }
+        }
+
+        private static void checkOrdinal(Object[] values, byte ordinal, String field) throws IOException {
+            if (ordinal != NULL_ORDINAL && (ordinal < 0 || ordinal >= values.length)) {
+                throw new IOException("Corrupt sensor snapshot file: " + field + " ordinal " + ordinal);
+            }
+        }
+
+        public AlarmStatus getAlarmStatus() {
+            return fromOrdinal(ALARM_STATUSES, buffer.get(6));
+        }
+
+        public ArmingStatus getArmingStatus() {
+            return fromOrdinal(ARMING_STATUSES, buffer.get(7));
+        }
+
+        public int size() {
+            return sensorCount;
+        }
+
+        private int record(int index) {
+            return HEADER_BYTES + index * RECORD_BYTES;
+        }
+
+        public UUID getSensorId(int index) {
+            int record = record(index);
+            return new UUID(buffer.getLong(record), buffer.getLong(record + 8));
+        }
+
+        public SensorType getSensorType(int index) {
+            return fromOrdinal(SENSOR_TYPES, buffer.get(record(index) + 20));
+        }
+
+        public boolean isActive(int index) {
+            return (buffer.get(record(index) + 21) & ACTIVE_FLAG) != 0;
+        }
+
+        public String getName(int index) {
+            int nameIndex = buffer.getInt(record(index) + 16);
+            if (nameIndex == NO_NAME) {
+                return null;
+            }
+            int offset = nameOffsets[nameIndex];
+            byte[] name = new byte[buffer.getInt(offset)];
+            buffer.get(offset + Integer.BYTES, name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Builds a new Sensor from the record at the given index.
+         */
+        public Sensor getSensor(int index) {
+            Sensor sensor = new Sensor();
+            sensor.setSensorId(getSensorId(index));
+            sensor.setName(getName(index));
+            sensor.setSensorType(getSensorType(index));
+            sensor.setActive(isActive(index));
+            return sensor;
+        }
+
+        public List<Sensor> getSensors() {
+            List<Sensor> sensors = new ArrayList<>(sensorCount);
+            for (int i = 0; i < sensorCount; i++) {
+                sensors.add(getSensor(i));
+            }
+            return sensors;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.udacity.catpoint.security.data;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Hand-written Gson adapter for {@link Sensor}. It reads and writes the same JSON that Gson's
+ * reflective adapter produced, field by field, so sensors can be (de)serialized without opening
+ * the data package to Gson and without building an intermediate tree.
+ */
+public class SensorTypeAdapter extends TypeAdapter<Sensor> {
+
+    //JSON field names, matching the Sensor field names the reflective adapter used
+    private static final String SENSOR_ID = "sensorId";
+    private static final String NAME = "name";
+    private static final String ACTIVE = "active";
+    private static final String SENSOR_TYPE = "sensorType";
+
+    /**
+     * @return A Gson instance that uses this adapter for sensors
+     */
+    public static Gson createGson() {
+        return new GsonBuilder().registerTypeAdapter(Sensor.class, new SensorTypeAdapter()).create();
+    }
+
+    @Override
+    public void write(JsonWriter out, Sensor sensor) throws IOException {
+        if (sensor == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        if (sensor.getSensorId() != null) {
+            out.name(SENSOR_ID).value(sensor.getSensorId().toString());
+        }
+        if (sensor.getName() != null) {
+            out.name(NAME).value(sensor.getName());
+        }
+        if (sensor.getActive() != null) {
+            out.name(ACTIVE).value(sensor.getActive());
+        }
+        if (sensor.getSensorType() != null) {
+            out.name(SENSOR_TYPE).value(sensor.getSensorType().name());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public Sensor read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Sensor sensor = new Sensor();
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case SENSOR_ID -> sensor.setSensorId(UUID.fromString(in.nextString()));
+                case NAME -> sensor.setName(in.nextString());
+                case ACTIVE -> sensor.setActive(in.nextBoolean());
+                case SENSOR_TYPE -> sensor.setSensorType(SensorType.valueOf(in.nextString()));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return sensor;
+    }
+
+    /**
+     * Streams a JSON array of sensors, handing each one to the consumer as soon as it is parsed.
+     * @param json Reader positioned at the start of the array
+     * @param consumer Receives every sensor in array order
+     */
+    public void readAll(Reader json, Consumer<Sensor> consumer) throws IOException {
+        JsonReader in = new JsonReader(json);
+        in.beginArray();
+        while (in.hasNext()) {
+            consumer.accept(read(in));
+        }
+        in.endArray();
+    }
+}
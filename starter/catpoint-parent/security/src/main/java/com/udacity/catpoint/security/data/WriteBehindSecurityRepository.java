@@ -0,0 +1,307 @@
+package com.udacity.catpoint.security.data;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorator that sits in front of another repository and serves all reads from local memory.
+ * In {@link DurabilityMode#COALESCED} mode changes are only marked dirty; a background flush
+ * merges everything that changed since the last flush and hands it to the backing repository
+ * in as few writes as possible, so arming a system with N sensors costs one sensor write rather
+ * than N. Pending changes are also flushed on {@link #close()} and when the JVM shuts down.
+ * <p>
+ * A change stays pending until the backing repository has taken it, so a background flush that
+ * fails is logged, counted in {@link #getFlushFailures()} and retried with whatever is still
+ * pending on the next run.
+ */
+public class WriteBehindSecurityRepository implements SecurityRepository, AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(WriteBehindSecurityRepository.class.getName());
+
+    private final SecurityRepository delegate;
+    private final DurabilityMode durabilityMode;
+
+    private final SensorIndex sensors = new SensorIndex();
+    private AlarmStatus alarmStatus;
+    private ArmingStatus armingStatus;
+
+    //changes not yet written to the delegate, merged so only the latest change per sensor is kept
+    private final Map<UUID, PendingChange> pendingSensors = new LinkedHashMap<>();
+    private final Map<UUID, Sensor> pendingSensorObjects = new LinkedHashMap<>();
+    private boolean alarmStatusDirty;
+    private boolean armingStatusDirty;
+
+    private final AtomicLong writesRequested = new AtomicLong();
+    private final AtomicLong writesPerformed = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+
+    private final ScheduledExecutorService flusher;
+    private final Thread shutdownHook;
+
+    private enum PendingChange { ADD, UPDATE, REMOVE }
+
+    /**
+     * @param delegate The repository that actually persists the state
+     * @param durabilityMode Whether to write through immediately or coalesce writes
+     * @param flushInterval How often pending changes are flushed in COALESCED mode
+     */
+    public WriteBehindSecurityRepository(SecurityRepository delegate, DurabilityMode durabilityMode, Duration flushInterval) {
+        this.delegate = delegate;
+        this.durabilityMode = durabilityMode;
+        delegate.getSensors().forEach(sensors::put);
+        this.alarmStatus = delegate.getAlarmStatus();
+        this.armingStatus = delegate.getArmingStatus();
+
+        if (durabilityMode == DurabilityMode.COALESCED) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "security-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = flushInterval.toMillis();
+            flusher.scheduleWithFixedDelay(this::backgroundFlush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            shutdownHook = new Thread(this::flush, "security-write-behind-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } else {
+            flusher = null;
+            shutdownHook = null;
+        }
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors.put(sensor);
+        writesRequested.incrementAndGet();
+        if (durabilityMode == DurabilityMode.SYNC) {
+            writeThrough(() -> delegate.addSensor(sensor));
+            return;
+        }
+        //a sensor removed and re-added before the flush still exists in the delegate, so just update it
+        pendingSensors.merge(sensor.getSensorId(), PendingChange.ADD,
+                (prior, next) -> prior == PendingChange.REMOVE ? PendingChange.UPDATE : prior);
+        pendingSensorObjects.put(sensor.getSensorId(), sensor);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors.remove(sensor);
+        writesRequested.incrementAndGet();
+        if (durabilityMode == DurabilityMode.SYNC) {
+            writeThrough(() -> delegate.removeSensor(sensor));
+            return;
+        }
+        //a sensor added and removed before the flush never needs to reach the delegate at all
+        if (pendingSensors.get(sensor.getSensorId()) == PendingChange.ADD) {
+            pendingSensors.remove(sensor.getSensorId());
+            pendingSensorObjects.remove(sensor.getSensorId());
+        } else {
+            pendingSensors.put(sensor.getSensorId(), PendingChange.REMOVE);
+            pendingSensorObjects.put(sensor.getSensorId(), sensor);
+        }
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors.put(sensor);
+        writesRequested.incrementAndGet();
+        if (durabilityMode == DurabilityMode.SYNC) {
+            writeThrough(() -> delegate.updateSensor(sensor));
+            return;
+        }
+        pendingSensors.putIfAbsent(sensor.getSensorId(), PendingChange.UPDATE);
+        pendingSensorObjects.put(sensor.getSensorId(), sensor);
+    }
+
+    @Override
+    public synchronized Collection<Sensor> resetAllSensors() {
+        Collection<Sensor> deactivated = sensors.deactivateAll();
+        writesRequested.incrementAndGet();
+        if (durabilityMode == DurabilityMode.SYNC) {
+            writeThrough(delegate::resetAllSensors);
+            return deactivated;
+        }
+        //flushed as updates rather than a reset, so sensors activated again before the flush stay active
+        deactivated.forEach(sensor -> {
+            pendingSensors.putIfAbsent(sensor.getSensorId(), PendingChange.UPDATE);
+            pendingSensorObjects.put(sensor.getSensorId(), sensor);
+        });
+        return deactivated;
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        writesRequested.incrementAndGet();
+        if (durabilityMode == DurabilityMode.SYNC) {
+            writeThrough(() -> delegate.setAlarmStatus(alarmStatus));
+            return;
+        }
+        alarmStatusDirty = true;
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        writesRequested.incrementAndGet();
+        if (durabilityMode == DurabilityMode.SYNC) {
+            writeThrough(() -> delegate.setArmingStatus(armingStatus));
+            return;
+        }
+        armingStatusDirty = true;
+    }
+
+    private void writeThrough(Runnable write) {
+        write.run();
+        writesPerformed.incrementAndGet();
+    }
+
+    /**
+     * Writes every pending change to the delegate. Removals and additions are passed on one by one,
+     * while all updated sensors are handed over as a single batch. Each change is only dropped from
+     * the pending ones once the delegate has taken it.
+     * @throws RuntimeException whatever the delegate threw; the changes it did not take stay pending
+     */
+    public synchronized void flush() {
+        List<Sensor> updated = new ArrayList<>();
+        Iterator<Map.Entry<UUID, PendingChange>> changes = pendingSensors.entrySet().iterator();
+        while (changes.hasNext()) {
+            Map.Entry<UUID, PendingChange> change = changes.next();
+            Sensor sensor = pendingSensorObjects.get(change.getKey());
+            switch (change.getValue()) {
+                case REMOVE -> writeThrough(() -> delegate.removeSensor(sensor));
+                case ADD -> writeThrough(() -> delegate.addSensor(sensor));
+                case UPDATE -> {
+                    updated.add(sensor);
+                    continue;
+                }
+            }
+            changes.remove();
+            pendingSensorObjects.remove(change.getKey());
+        }
+        if (!updated.isEmpty()) {
+            writeThrough(() -> delegate.updateSensors(updated));
+            pendingSensors.clear();
+            pendingSensorObjects.clear();
+        }
+
+        if (alarmStatusDirty) {
+            writeThrough(() -> delegate.setAlarmStatus(alarmStatus));
+            alarmStatusDirty = false;
+        }
+        if (armingStatusDirty) {
+            writeThrough(() -> delegate.setArmingStatus(armingStatus));
+            armingStatusDirty = false;
+        }
+    }
+
+    //runs on the flusher thread, where an exception would silently cancel every later run
+    private void backgroundFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            flushFailures.incrementAndGet();
+            LOG.log(System.Logger.Level.WARNING, "Unable to flush pending security changes, will retry", e);
+        }
+    }
+
+    /**
+     * @return The hook that flushes on JVM shutdown, or null in SYNC mode
+     */
+    Thread getShutdownHook() {
+        return shutdownHook;
+    }
+
+    public DurabilityMode getDurabilityMode() {
+        return durabilityMode;
+    }
+
+    /**
+     * @return Number of write operations callers have asked this repository to perform
+     */
+    public long getWritesRequested() {
+        return writesRequested.get();
+    }
+
+    /**
+     * @return Number of write operations actually issued to the backing repository
+     */
+    public long getWritesPerformed() {
+        return writesPerformed.get();
+    }
+
+    /**
+     * @return Number of background flushes the backing repository failed; their changes were retried
+     */
+    public long getFlushFailures() {
+        return flushFailures.get();
+    }
+
+    /**
+     * @return Number of backing-store writes avoided by coalescing
+     */
+    public long getWritesSaved() {
+        return writesRequested.get() - writesPerformed.get();
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors.all();
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return sensors.get(sensorId);
+    }
+
+    @Override
+    public Set<Sensor> getSensors(SensorType sensorType) {
+        return sensors.ofType(sensorType);
+    }
+
+    @Override
+    public Set<Sensor> getActiveSensors(SensorType sensorType) {
+        return sensors.activeOfType(sensorType);
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensors.activeCount();
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * Stops the background flush and writes out anything still pending.
+     */
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                //already shutting down, the hook will flush anyway
+            }
+        }
+        flush();
+    }
+}
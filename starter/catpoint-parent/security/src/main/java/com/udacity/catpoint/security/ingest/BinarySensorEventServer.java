@@ -0,0 +1,252 @@
+package com.udacity.catpoint.security.ingest;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.service.SecurityEventLoop;
+import com.udacity.catpoint.security.service.SecurityService;
+import com.udacity.catpoint.security.service.SensorChange;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking listener for gateways that stream {@link SensorEventFrame binary frames}. One
+ * selector thread serves every connection: each read lands in the connection's direct buffer,
+ * the complete frames in it are decoded in place, and the burst is handed to the
+ * {@link SecurityEventLoop} as one batch, applied with
+ * {@link SecurityService#changeSensorActivationStatuses}. Nothing is sent back.
+ * <p>
+ * Frames are resolved to the existing sensors by sensorId on the event loop thread; frames for
+ * unknown sensors are counted and skipped. A connection that sends a frame with an unknown action
+ * has lost its framing and is closed, after the frames before the bad one have been applied.
+ * <p>
+ * If the event loop refuses a batch, typically because it has been closed, the batch is dropped
+ * and its connection closed so the gateway sees that its frames were not taken; the selector
+ * thread keeps serving the other connections.
+ */
+public class BinarySensorEventServer implements AutoCloseable {
+
+    //per connection; several frames per read without making idle connections expensive
+    private static final int BUFFER_BYTES = SensorEventFrame.FRAME_BYTES * 512;
+
+    private final SecurityEventLoop eventLoop;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread thread;
+    private final int port;
+    private volatile boolean running = true;
+
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong unknownSensors = new AtomicLong();
+    private final AtomicLong malformedConnections = new AtomicLong();
+    private final AtomicLong rejectedBatches = new AtomicLong();
+
+    /**
+     * Binds the address and starts the selector thread.
+     * @param address Address to listen on; port 0 picks a free port, see {@link #getPort()}
+     */
+    public BinarySensorEventServer(SecurityEventLoop eventLoop, InetSocketAddress address) throws IOException {
+        this.eventLoop = eventLoop;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            this.port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        this.thread = new Thread(this::run, "binary-sensor-event-selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return Number of well-formed frames received so far
+     */
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    /**
+     * @return Number of frames skipped because no sensor had their sensorId, counted once applied
+     */
+    public long getUnknownSensors() {
+        return unknownSensors.get();
+    }
+
+    /**
+     * @return Number of connections closed for sending a malformed frame
+     */
+    public long getMalformedConnections() {
+        return malformedConnections.get();
+    }
+
+    /**
+     * @return Number of batches the event loop refused; each one's connection was closed
+     */
+    public long getRejectedBatches() {
+        return rejectedBatches.get();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        }
+                    } catch (RuntimeException e) {
+                        //a bug handling one connection must not take the selector thread down with it
+                        if (key.channel() != serverChannel) {
+                            drop(key);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                //the selector itself failed; nothing sensible to do but try again
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(BUFFER_BYTES));
+        }
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        int read;
+        try {
+            read = channel.read(buffer);
+        } catch (IOException e) {
+            drop(key);
+            return;
+        }
+
+        buffer.flip();
+        FrameBatch batch = new FrameBatch(buffer.remaining() / SensorEventFrame.FRAME_BYTES);
+        boolean malformed = false;
+        try {
+            SensorEventFrame.decode(buffer, batch);
+        } catch (ProtocolException e) {
+            malformed = true;
+        }
+        buffer.compact();
+        try {
+            submit(batch);
+        } catch (RuntimeException e) {
+            rejectedBatches.incrementAndGet();
+            drop(key);
+            return;
+        }
+
+        if (malformed) {
+            malformedConnections.incrementAndGet();
+            drop(key);
+        } else if (read < 0) {
+            //a trailing partial frame from a closed connection can never be completed
+            drop(key);
+        }
+    }
+
+    private void submit(FrameBatch batch) {
+        if (batch.size == 0) {
+            return;
+        }
+        framesReceived.addAndGet(batch.size);
+        eventLoop.execute(batch::applyTo);
+    }
+
+    private void drop(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            //closing anyway
+        }
+    }
+
+    /**
+     * Frames decoded from one read, kept as primitives until they are resolved on the event loop.
+     */
+    private final class FrameBatch implements SensorEventFrame.Handler {
+        private final long[] sensorIds;
+        private final boolean[] active;
+        private int size;
+
+        private FrameBatch(int capacity) {
+            sensorIds = new long[capacity * 2];
+            active = new boolean[capacity];
+        }
+
+        @Override
+        public void onFrame(long mostSigBits, long leastSigBits, boolean active, long timestamp) {
+            sensorIds[size * 2] = mostSigBits;
+            sensorIds[size * 2 + 1] = leastSigBits;
+            this.active[size] = active;
+            size++;
+        }
+
+        private void applyTo(SecurityService service) {
+            List<SensorChange> changes = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Sensor sensor = service.getSensor(new UUID(sensorIds[i * 2], sensorIds[i * 2 + 1]));
+                if (sensor == null) {
+                    unknownSensors.incrementAndGet();
+                } else {
+                    changes.add(new SensorChange(sensor, active[i]));
+                }
+            }
+            service.changeSensorActivationStatuses(changes);
+        }
+    }
+
+    /**
+     * Stops the selector thread and closes every connection. Batches already handed to the event
+     * loop are still applied.
+     */
+    @Override
+    public void close() throws IOException, InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join();
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+}
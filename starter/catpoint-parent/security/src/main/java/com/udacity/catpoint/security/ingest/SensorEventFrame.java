@@ -0,0 +1,74 @@
+package com.udacity.catpoint.security.ingest;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Fixed-layout binary frame for one sensor event, for gateways that send too many events for the
+ * text protocol of {@link SensorEventServer}. Layout, big-endian, {@value #FRAME_BYTES} bytes:
+ * <pre>
+ * offset  0  sensorId most significant bits (long)
+ * offset  8  sensorId least significant bits (long)
+ * offset 16  action (byte): 1 activate, 0 deactivate
+ * offset 17  timestamp (long): milliseconds since the epoch when the gateway saw the event
+ * </pre>
+ * Frames are decoded with absolute reads straight out of the buffer, without copying and without
+ * allocating anything per frame.
+ */
+public final class SensorEventFrame {
+
+    public static final int FRAME_BYTES = 25;
+    public static final byte DEACTIVATE = 0;
+    public static final byte ACTIVATE = 1;
+
+    private static final int ACTION_OFFSET = 16;
+    private static final int TIMESTAMP_OFFSET = 17;
+
+    private SensorEventFrame() {}
+
+    /**
+     * Receives decoded frames. The sensor id is passed as its two halves so decoding allocates
+     * nothing; {@code new UUID(mostSigBits, leastSigBits)} rebuilds it.
+     */
+    public interface Handler {
+        void onFrame(long mostSigBits, long leastSigBits, boolean active, long timestamp);
+    }
+
+    /**
+     * Appends one frame at the buffer's position.
+     */
+    public static void encode(ByteBuffer buffer, UUID sensorId, boolean active, long timestamp) {
+        buffer.putLong(sensorId.getMostSignificantBits());
+        buffer.putLong(sensorId.getLeastSignificantBits());
+        buffer.put(active ? ACTIVATE : DEACTIVATE);
+        buffer.putLong(timestamp);
+    }
+
+    /**
+     * Decodes every complete frame between the buffer's position and limit, in order, and moves the
+     * position past them. A trailing partial frame is left in place for the next read.
+     * @return The number of frames decoded
+     * @throws ProtocolException if a frame has an unknown action. Frames before it have been handed
+     * to the handler and the position is left at the start of the bad frame. Frames have no
+     * delimiters, so nothing after it can be trusted and the stream should be dropped.
+     */
+    public static int decode(ByteBuffer buffer, Handler handler) throws ProtocolException {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        int frames = 0;
+        while (limit - position >= FRAME_BYTES) {
+            byte action = buffer.get(position + ACTION_OFFSET);
+            if (action != ACTIVATE && action != DEACTIVATE) {
+                buffer.position(position);
+                throw new ProtocolException("Unknown sensor event action " + action);
+            }
+            handler.onFrame(buffer.getLong(position), buffer.getLong(position + 8), action == ACTIVATE,
+                    buffer.getLong(position + TIMESTAMP_OFFSET));
+            position += FRAME_BYTES;
+            frames++;
+        }
+        buffer.position(position);
+        return frames;
+    }
+}
@@ -0,0 +1,256 @@
+package com.udacity.catpoint.security.ingest;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.service.SecurityEventLoop;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Network listener that feeds sensor events from gateways into a {@link SecurityEventLoop}. Each
+ * connection speaks a line-based text protocol and gets a thread of its own, a virtual thread
+ * where the JVM has them, so thousands of mostly idle gateway connections cost little.
+ * <p>
+ * Every request is one line, answered by one line once the event has been applied:
+ * <pre>
+ * ACTIVATE &lt;sensorId&gt;      OK &lt;alarm status after the event&gt;
+ * DEACTIVATE &lt;sensorId&gt;    ERR &lt;reason&gt;
+ * </pre>
+ * Sensors are looked up by id on the event loop thread, so a sensor is only ever read and
+ * changed there. An event the event loop has not answered within {@link #DEFAULT_REPLY_TIMEOUT}
+ * gets {@code ERR timed out}; it may still be applied later. A line longer than
+ * {@value #MAX_LINE_LENGTH} characters gets {@code ERR line too long} and the connection is
+ * dropped, so a gateway that never sends a line break cannot make the server buffer without limit.
+ */
+public class SensorEventServer implements AutoCloseable {
+
+    public static final String ACTIVATE = "ACTIVATE";
+    public static final String DEACTIVATE = "DEACTIVATE";
+    public static final String OK = "OK";
+    public static final String ERROR = "ERR";
+    public static final Duration DEFAULT_REPLY_TIMEOUT = Duration.ofSeconds(10);
+    //the longest request is DEACTIVATE and a 36 character id
+    public static final int MAX_LINE_LENGTH = 256;
+
+    private static final System.Logger LOG = System.getLogger(SensorEventServer.class.getName());
+
+    //pending connections the OS queues for us while the acceptor catches up
+    private static final int BACKLOG = 4096;
+    //wait between failed accepts, doubling up to the maximum while they keep failing
+    private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final SecurityEventLoop eventLoop;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private final long replyTimeoutNanos;
+
+    /**
+     * Binds the address and starts accepting connections.
+     * @param address Address to listen on; port 0 picks a free port, see {@link #getPort()}
+     */
+    public SensorEventServer(SecurityEventLoop eventLoop, InetSocketAddress address) throws IOException {
+        this(eventLoop, address, DEFAULT_REPLY_TIMEOUT);
+    }
+
+    SensorEventServer(SecurityEventLoop eventLoop, InetSocketAddress address, Duration replyTimeout) throws IOException {
+        this.eventLoop = eventLoop;
+        this.replyTimeoutNanos = replyTimeout.toNanos();
+        this.serverSocket = new ServerSocket();
+        try {
+            serverSocket.bind(address, BACKLOG);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        this.connections = newThreadPerTaskExecutor("sensor-connection");
+        this.acceptor = new Thread(this::accept, "sensor-event-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return An executor that starts a virtual thread per task when the JVM supports them, and a
+     * daemon platform thread per task otherwise. Looked up reflectively so the code still builds
+     * and runs on releases without virtual threads.
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger number = new AtomicInteger();
+            ThreadFactory factory = r -> {
+                Thread thread = new Thread(r, name + "-" + number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        long backoffMillis = 0;
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                //out of file descriptors, say; retrying straight away would only spin
+                backoffMillis = Math.min(Math.max(backoffMillis * 2, MIN_ACCEPT_BACKOFF_MILLIS), MAX_ACCEPT_BACKOFF_MILLIS);
+                LOG.log(System.Logger.Level.WARNING, "Unable to accept a sensor connection, retrying in " + backoffMillis + " ms", e);
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            }
+            backoffMillis = 0;
+            try {
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                //the connection failed before we got to it
+                closeQuietly(socket);
+                continue;
+            }
+            openSockets.add(socket);
+            connections.execute(() -> serve(socket));
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //nothing left to release
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            //readLine, but with a limit on how much of a line is held
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = reader.read()) >= 0) {
+                if (c == '\n') {
+                    reply(writer, handle(line.toString()));
+                    line.setLength(0);
+                } else if (c != '\r') {
+                    if (line.length() == MAX_LINE_LENGTH) {
+                        reply(writer, ERROR + " line too long");
+                        return;
+                    }
+                    line.append((char) c);
+                }
+            }
+            if (line.length() > 0) {
+                reply(writer, handle(line.toString()));
+            }
+        } catch (IOException | IllegalStateException e) {
+            //the gateway went away, the server is closing or the event loop was closed under us
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    private static void reply(BufferedWriter writer, String response) throws IOException {
+        writer.write(response);
+        writer.newLine();
+        writer.flush();
+    }
+
+    /**
+     * Applies one request line and blocks the connection's thread until the event loop has
+     * processed it, or the reply timeout has passed.
+     * @return The response line
+     */
+    String handle(String line) {
+        int split = line.indexOf(' ');
+        String action = split < 0 ? line : line.substring(0, split);
+        boolean active;
+        if (action.equals(ACTIVATE)) {
+            active = true;
+        } else if (action.equals(DEACTIVATE)) {
+            active = false;
+        } else {
+            return ERROR + " unknown action";
+        }
+        UUID sensorId;
+        try {
+            sensorId = UUID.fromString(line.substring(split + 1).trim());
+        } catch (IllegalArgumentException e) {
+            return ERROR + " invalid sensor id";
+        }
+
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        eventLoop.execute(service -> {
+            try {
+                Sensor sensor = service.getSensor(sensorId);
+                if (sensor == null) {
+                    reply.complete(ERROR + " unknown sensor");
+                    return;
+                }
+                service.changeSensorActivationStatus(sensor, active);
+                reply.complete(OK + " " + service.getAlarmStatus());
+            } catch (RuntimeException e) {
+                //the gateway must still get an answer
+                reply.complete(ERROR + " " + e.getMessage());
+                throw e;
+            }
+        });
+        try {
+            return reply.orTimeout(replyTimeoutNanos, TimeUnit.NANOSECONDS).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                return ERROR + " timed out";
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops accepting, closes every open connection and waits for the acceptor to exit. Events
+     * already handed to the event loop are still applied.
+     */
+    @Override
+    public void close() throws IOException, InterruptedException {
+        serverSocket.close();
+        //cuts short a back-off wait
+        acceptor.interrupt();
+        acceptor.join();
+        for (Socket socket : openSockets) {
+            socket.close();
+        }
+        connections.shutdownNow();
+    }
+}
@@ -0,0 +1,16 @@
+package com.udacity.catpoint.security.service;
+
+/**
+ * Inputs that can move the alarm status, as seen by the {@link AlarmTransitionTable}.
+ */
+enum AlarmEvent {
+    /** A sensor was set active, whether or not it already was */
+    SENSOR_ACTIVATED,
+    /** An active sensor was set inactive. Deactivating an inactive sensor is not an event. */
+    SENSOR_DEACTIVATED,
+    CAT_DETECTED,
+    NO_CAT_DETECTED,
+    DISARMED,
+    ARMED_HOME,
+    ARMED_AWAY
+}
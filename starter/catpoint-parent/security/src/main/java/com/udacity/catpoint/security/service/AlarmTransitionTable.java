@@ -0,0 +1,82 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+
+/**
+ * The alarm rules compiled into one lookup table. Every combination of arming status, alarm
+ * status, event, whether any sensor is active and whether the camera shows a cat has a slot
+ * holding the alarm status to set, or null when the event leaves the alarm alone. The table is
+ * filled once when the class loads, so evaluating a rule is a single array read.
+ */
+final class AlarmTransitionTable {
+
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final AlarmEvent[] EVENTS = AlarmEvent.values();
+
+    private static final AlarmStatus[] TRANSITIONS = new AlarmStatus[ARMING_STATUSES.length * ALARM_STATUSES.length * EVENTS.length * 4];
+
+    static {
+        for (ArmingStatus arming : ARMING_STATUSES) {
+            for (AlarmStatus alarm : ALARM_STATUSES) {
+                for (AlarmEvent event : EVENTS) {
+                    for (int flags = 0; flags < 4; flags++) {
+                        boolean anySensorActive = (flags & 2) != 0;
+                        boolean cameraShowsCat = (flags & 1) != 0;
+                        TRANSITIONS[index(arming, alarm, event, anySensorActive, cameraShowsCat)] =
+                                transition(arming, alarm, event, anySensorActive, cameraShowsCat);
+                    }
+                }
+            }
+        }
+    }
+
+    private AlarmTransitionTable() {}
+
+    private static int index(ArmingStatus arming, AlarmStatus alarm, AlarmEvent event, boolean anySensorActive, boolean cameraShowsCat) {
+        return (((arming.ordinal() * ALARM_STATUSES.length + alarm.ordinal()) * EVENTS.length + event.ordinal()) << 2)
+                | (anySensorActive ? 2 : 0)
+                | (cameraShowsCat ? 1 : 0);
+    }
+
+    private static AlarmStatus transition(ArmingStatus arming, AlarmStatus alarm, AlarmEvent event, boolean anySensorActive, boolean cameraShowsCat) {
+        boolean armed = arming != ArmingStatus.DISARMED;
+        switch (event) {
+            case SENSOR_ACTIVATED:
+                // Requirements 1, 2 and 5: armed systems escalate; Requirement 4: an alarm stays an alarm
+                if (armed && alarm == AlarmStatus.NO_ALARM) return AlarmStatus.PENDING_ALARM;
+                if (armed && alarm == AlarmStatus.PENDING_ALARM) return AlarmStatus.ALARM;
+                return null;
+            case SENSOR_DEACTIVATED:
+                // Requirement 3: pending alarm with every sensor inactive returns to no alarm
+                return alarm == AlarmStatus.PENDING_ALARM && !anySensorActive ? AlarmStatus.NO_ALARM : null;
+            case CAT_DETECTED:
+                // Requirement 7
+                return arming == ArmingStatus.ARMED_HOME ? AlarmStatus.ALARM : null;
+            case NO_CAT_DETECTED:
+                // Requirement 8
+                return anySensorActive ? null : AlarmStatus.NO_ALARM;
+            case DISARMED:
+                // Requirement 9
+                return AlarmStatus.NO_ALARM;
+            case ARMED_HOME:
+                // Requirement 11
+                return cameraShowsCat ? AlarmStatus.ALARM : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Looks up the alarm status an event leads to. A null arming or alarm status, as reported by a
+     * repository that has never stored one, counts as the repositories' default of DISARMED and
+     * NO_ALARM.
+     * @return The alarm status to set, or null if the alarm status should not be touched
+     */
+    static AlarmStatus next(ArmingStatus arming, AlarmStatus alarm, AlarmEvent event, boolean anySensorActive, boolean cameraShowsCat) {
+        return TRANSITIONS[index(arming == null ? ArmingStatus.DISARMED : arming,
+                alarm == null ? AlarmStatus.NO_ALARM : alarm,
+                event, anySensorActive, cameraShowsCat)];
+    }
+}
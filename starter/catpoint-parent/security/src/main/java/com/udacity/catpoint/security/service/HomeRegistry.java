@@ -0,0 +1,307 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.PartitionedHomeStore;
+import com.udacity.catpoint.security.data.SecurityRepository;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Hosts many independent homes in one JVM, each with its own {@link SecurityService} and
+ * repository, on a shared, bounded pool of worker threads.
+ * <p>
+ * Commands for a home are queued in that home's mailbox and applied in order, one at a time, by
+ * whichever worker picks the home up, so every home behaves as if it had its own
+ * {@link SecurityEventLoop} without needing a thread of its own. A worker applies at most
+ * {@link #BATCH_SIZE} commands before handing the home back to the pool, so one busy home cannot
+ * starve the others. Listeners registered on a home's service are called on the worker thread.
+ * <p>
+ * A home is loaded from the {@link PartitionedHomeStore} by the first command sent to it. Once a
+ * home has received no commands for the idle timeout it is saved back to the store and dropped
+ * from memory, to be loaded again the next time it is used. Anything not kept in the repository,
+ * such as subscriptions on the home's event bus or whether the camera last showed a cat, does
+ * not survive being paged out.
+ */
+public class HomeRegistry implements AutoCloseable {
+
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    static final int BATCH_SIZE = 64;
+
+    private final PartitionedHomeStore store;
+    private final ImageService imageService;
+    private final long idleNanos;
+    private final ConcurrentHashMap<String, Home> homes = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService sweeper;
+    private final Object allPagedOut = new Object();
+    private volatile boolean open = true;
+
+    /**
+     * Creates a registry with one worker per available processor and the default idle timeout.
+     */
+    public HomeRegistry(PartitionedHomeStore store, ImageService imageService) {
+        this(store, imageService, Runtime.getRuntime().availableProcessors(), DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param store Where homes are loaded from and paged out to
+     * @param imageService Image service shared by every home
+     * @param workerThreads Number of threads that apply commands, for all homes together
+     * @param idleTimeout How long a home may go without commands before it is paged out
+     */
+    public HomeRegistry(PartitionedHomeStore store, ImageService imageService, int workerThreads, Duration idleTimeout) {
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("Idle timeout must be positive: " + idleTimeout);
+        }
+        this.store = store;
+        this.imageService = imageService;
+        this.idleNanos = idleTimeout.toNanos();
+
+        AtomicInteger workerNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread thread = new Thread(r, "home-worker-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "home-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepMillis = Math.max(1, idleTimeout.toMillis() / 2);
+        sweeper.scheduleWithFixedDelay(this::pageOutIdleHomes, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a command to be applied to the service of the given home, loading the home if it is
+     * not in memory. Commands for the same home are applied in the order they were queued.
+     * @throws IllegalArgumentException if the home id is not valid, see {@link PartitionedHomeStore#checkHomeId(String)}
+     * @throws IllegalStateException if the registry has been closed
+     */
+    public void execute(String homeId, Consumer<SecurityService> command) {
+        PartitionedHomeStore.checkHomeId(homeId);
+        if (!open) {
+            throw new IllegalStateException("Home registry is closed");
+        }
+        Home home = homes.computeIfAbsent(homeId, Home::new);
+        while (!home.offer(command)) {
+            //the home is being paged out; make sure it is gone and load it again
+            homes.remove(homeId, home);
+            home = homes.computeIfAbsent(homeId, Home::new);
+        }
+    }
+
+    /**
+     * Queues a query against the service of the given home.
+     * @return Future completed with the result of the query once it has run on the home's worker
+     */
+    public <T> CompletableFuture<T> submit(String homeId, Function<SecurityService, T> query) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(homeId, service -> {
+            try {
+                result.complete(query.apply(service));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return Number of homes currently held in memory
+     */
+    public int residentHomes() {
+        return homes.size();
+    }
+
+    private void pageOutIdleHomes() {
+        long now = System.nanoTime();
+        for (Home home : homes.values()) {
+            if (now - home.lastUsed >= idleNanos) {
+                home.requestPageOut();
+            }
+        }
+    }
+
+    /**
+     * Saves every home to the store and stops the workers once they have applied the commands
+     * already queued. Commands that race with close may be rejected.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        sweeper.shutdownNow();
+        //once closed, every home pages itself out as soon as its mailbox is empty
+        homes.values().forEach(Home::requestPageOut);
+        synchronized (allPagedOut) {
+            while (!homes.isEmpty()) {
+                allPagedOut.wait();
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * One home: its mailbox, and its service once loaded. The service and repository are only ever
+     * touched by the worker currently running the home, which the scheduled flag makes exclusive.
+     */
+    private final class Home implements Runnable {
+        private final String homeId;
+        private final Queue<Consumer<SecurityService>> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile long lastUsed = System.nanoTime();
+        private volatile boolean pageOutRequested;
+        private boolean evicted; //guarded by this
+
+        private SecurityRepository repository;
+        private SecurityService service;
+        private boolean dirty;
+
+        private Home(String homeId) {
+            this.homeId = homeId;
+        }
+
+        /**
+         * @return False if the home has been paged out and no longer accepts commands
+         */
+        private boolean offer(Consumer<SecurityService> command) {
+            synchronized (this) {
+                if (evicted) {
+                    return false;
+                }
+                mailbox.add(command);
+                lastUsed = System.nanoTime();
+            }
+            schedule();
+            return true;
+        }
+
+        private void requestPageOut() {
+            pageOutRequested = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (service == null && !load()) {
+                    return;
+                }
+                Consumer<SecurityService> command;
+                for (int i = 0; i < BATCH_SIZE && (command = mailbox.poll()) != null; i++) {
+                    dirty = true;
+                    apply(command);
+                }
+                if (pageOutRequested || !open) {
+                    pageOutRequested = false;
+                    pageOutIfIdle();
+                }
+            } finally {
+                scheduled.set(false);
+                //anything queued while the flag was still set would otherwise wait for the next offer
+                if (!evicted() && (!mailbox.isEmpty() || pageOutRequested || !open)) {
+                    schedule();
+                }
+            }
+        }
+
+        private boolean load() {
+            try {
+                repository = store.load(homeId);
+                service = new SecurityService(repository, imageService);
+                return true;
+            } catch (RuntimeException e) {
+                //nothing can be applied to a home that cannot be loaded; drop it with its commands, and
+                //the next command for it tries again
+                synchronized (this) {
+                    mailbox.clear();
+                    evicted = true;
+                }
+                remove();
+                report(e);
+                return false;
+            }
+        }
+
+        private void apply(Consumer<SecurityService> command) {
+            try {
+                command.accept(service);
+            } catch (RuntimeException e) {
+                //a failing command must not stop the home
+                report(e);
+            }
+        }
+
+        private void report(RuntimeException e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+
+        /**
+         * Saves the home and removes it from the registry, unless it has been used since the page
+         * out was requested. The home is saved before it stops accepting commands, so a command
+         * that arrives in between keeps it in memory and a home loaded after it is gone always
+         * finds the saved state. Once the registry is closed the home is paged out whether it is
+         * idle or not, as soon as its mailbox is empty.
+         */
+        private void pageOutIfIdle() {
+            if (open && System.nanoTime() - lastUsed < idleNanos) {
+                return;
+            }
+            if (dirty) {
+                try {
+                    store.save(homeId, repository);
+                    dirty = false;
+                } catch (RuntimeException e) {
+                    report(e);
+                    if (open) {
+                        //stay in memory and try again on the next sweep
+                        return;
+                    }
+                }
+            }
+            synchronized (this) {
+                if (!mailbox.isEmpty()) {
+                    return;
+                }
+                evicted = true;
+            }
+            remove();
+        }
+
+        private void remove() {
+            homes.remove(homeId, this);
+            if (!open) {
+                synchronized (allPagedOut) {
+                    allPagedOut.notifyAll();
+                }
+            }
+        }
+
+        private synchronized boolean evicted() {
+            return evicted;
+        }
+    }
+}
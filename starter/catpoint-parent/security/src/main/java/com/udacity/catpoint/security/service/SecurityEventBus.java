@@ -0,0 +1,181 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.application.StatusListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Typed publish/subscribe for security events. Subscribers register for one
+ * {@link SecurityEventType}, and publishing walks a precomputed array holding only that type's
+ * subscribers, so an event never reaches a component that is not interested in it. The arrays are
+ * copied on subscribe and unsubscribe, which are rare, and read without locking on publish.
+ * <p>
+ * Delivery goes through an {@link Executor}, so a slow subscriber never holds up the publisher.
+ * Each subscription is a mailbox drained by at most one task at a time. Payloads that pile up
+ * while it waits are merged by the event type's rule: statuses are latest-wins, and sensor changes
+ * are combined into one notification. With a direct executor ({@code Runnable::run}) every event
+ * is delivered before publish returns.
+ * <p>
+ * {@link StatusListener} implementations can still be registered; they are adapted into one
+ * subscription per event type.
+ */
+public class SecurityEventBus {
+
+    private static final Subscriber<?>[] NO_SUBSCRIBERS = new Subscriber<?>[0];
+
+    private final Executor executor;
+    private final AtomicReferenceArray<Subscriber<?>[]> subscribers = new AtomicReferenceArray<>(SecurityEventType.COUNT);
+    private final Map<StatusListener, List<Subscription>> statusListeners = new ConcurrentHashMap<>();
+
+    /**
+     * Handle for cancelling a subscription. Events that are still waiting are dropped.
+     */
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * @param executor Runs the delivery tasks, for example {@code SwingUtilities::invokeLater} for
+     *                 subscribers that update Swing components
+     */
+    public SecurityEventBus(Executor executor) {
+        this.executor = executor;
+        for (int i = 0; i < SecurityEventType.COUNT; i++) {
+            subscribers.set(i, NO_SUBSCRIBERS);
+        }
+    }
+
+    public <T> Subscription subscribe(SecurityEventType<T> type, Consumer<? super T> consumer) {
+        Subscriber<T> subscriber = new Subscriber<>(type, consumer);
+        synchronized (subscribers) {
+            Subscriber<?>[] current = subscribers.get(type.index());
+            Subscriber<?>[] updated = new Subscriber<?>[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = subscriber;
+            subscribers.set(type.index(), updated);
+        }
+        return subscriber;
+    }
+
+    private void unsubscribe(Subscriber<?> subscriber) {
+        synchronized (subscribers) {
+            Subscriber<?>[] current = subscribers.get(subscriber.type.index());
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == subscriber) {
+                    Subscriber<?>[] updated = new Subscriber<?>[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    subscribers.set(subscriber.type.index(), updated);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers the event to every subscriber of its type.
+     * @param payload Event data, never null
+     * @throws RejectedExecutionException If the executor refused a delivery task, after every
+     * subscriber has been tried. The payload stays waiting and goes out with the subscriber's next
+     * event.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void publish(SecurityEventType<T> type, T payload) {
+        RuntimeException refused = null;
+        for (Subscriber<?> subscriber : subscribers.get(type.index())) {
+            try {
+                ((Subscriber<T>) subscriber).post(payload);
+            } catch (RuntimeException e) {
+                //the other subscribers still get the event
+                if (refused == null) {
+                    refused = e;
+                } else {
+                    refused.addSuppressed(e);
+                }
+            }
+        }
+        if (refused != null) {
+            throw refused;
+        }
+    }
+
+    /**
+     * Registers a listener for all three event types through the old three-method interface.
+     * Registering the same listener twice has no effect.
+     */
+    public void addStatusListener(StatusListener statusListener) {
+        statusListeners.computeIfAbsent(statusListener, listener -> List.of(
+                subscribe(SecurityEventType.ALARM_STATUS_CHANGED, listener::notify),
+                subscribe(SecurityEventType.CAT_DETECTED, listener::catDetected),
+                subscribe(SecurityEventType.SENSORS_CHANGED, sensors -> listener.sensorStatusChanged())));
+    }
+
+    public void removeStatusListener(StatusListener statusListener) {
+        List<Subscription> subscriptions = statusListeners.remove(statusListener);
+        if (subscriptions != null) {
+            subscriptions.forEach(Subscription::close);
+        }
+    }
+
+    private class Subscriber<T> implements Subscription {
+        private final SecurityEventType<T> type;
+        private final Consumer<? super T> consumer;
+        private final AtomicReference<T> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed = false;
+
+        private Subscriber(SecurityEventType<T> type, Consumer<? super T> consumer) {
+            this.type = type;
+            this.consumer = consumer;
+        }
+
+        private void post(T payload) {
+            pending.accumulateAndGet(payload, (older, newer) -> older == null ? newer : type.coalesce(older, newer));
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RuntimeException e) {
+                    //no drain is coming, so the next post must schedule one
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        private void drain() {
+            do {
+                T payload = pending.getAndSet(null);
+                if (payload != null && !closed) {
+                    deliver(payload);
+                }
+                scheduled.set(false);
+                //anything posted after we took the payload but before scheduled was reset is ours
+            } while (pending.get() != null && scheduled.compareAndSet(false, true));
+        }
+
+        private void deliver(T payload) {
+            try {
+                consumer.accept(payload);
+            } catch (RuntimeException e) {
+                //one broken subscriber must not stop later deliveries
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            unsubscribe(this);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Sensor;
+
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Optional single-writer front end for a {@link SecurityService}. Every state change is queued as a
+ * command in a lock-free ring buffer and applied, in order, by one dedicated thread, so the
+ * service's read-modify-write sequences against the repository never interleave no matter how
+ * many threads (Swing, sensor feeds, the camera) submit changes. Submitting never takes a lock;
+ * if the buffer is full the caller spins until the loop catches up. A command submitting another
+ * into a full buffer is refused instead, since the loop cannot catch up while it waits. An idle
+ * loop spins briefly, then parks until a command or close wakes it.
+ * <p>
+ * Listeners registered on the service are called on the event loop thread. Once a service is
+ * driven through an event loop, {@link SecurityService#getState()} can still be read from any
+ * thread; other reads should go through {@link #execute(Consumer)}, or follow
+ * {@link #awaitProcessed()}, to see a consistent state.
+ * <p>
+ * A command submitted while the loop is closing is either rejected or applied before the loop
+ * thread exits: producers announce themselves in a count before checking that the loop is open,
+ * and the loop only exits once it is closed, that count is zero and the buffer is empty.
+ */
+public class SecurityEventLoop implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    //empty polls before the loop parks
+    private static final int SPIN_LIMIT = 1_000;
+
+    private final SecurityService securityService;
+    private final CommandRingBuffer<Consumer<SecurityService>> commands;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean parked = false;
+    //producers between their open check and publishing their command
+    private final AtomicInteger producers = new AtomicInteger();
+
+    public SecurityEventLoop(SecurityService securityService) {
+        this(securityService, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param securityService The service all commands are applied to
+     * @param capacity Maximum number of queued commands, rounded up to a power of two
+     */
+    public SecurityEventLoop(SecurityService securityService, int capacity) {
+        this.securityService = securityService;
+        this.commands = new CommandRingBuffer<>(capacity);
+        this.thread = new Thread(this::run, "security-event-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a command to be applied to the service on the event loop thread.
+     * @throws IllegalStateException if the event loop has been closed, or if called from the event
+     * loop thread while the buffer is full, which would never return
+     */
+    public void execute(Consumer<SecurityService> command) {
+        producers.incrementAndGet();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Security event loop is closed");
+            }
+            while (!commands.offer(command)) {
+                if (inEventLoop()) {
+                    throw new IllegalStateException("Security event loop is full");
+                }
+                wake();
+                Thread.onSpinWait();
+            }
+        } finally {
+            producers.decrementAndGet();
+        }
+        wake();
+    }
+
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        execute(service -> service.setArmingStatus(armingStatus));
+    }
+
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        execute(service -> service.setAlarmStatus(alarmStatus));
+    }
+
+    public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
+        execute(service -> service.changeSensorActivationStatus(sensor, active));
+    }
+
+    public void changeSensorActivationStatuses(Collection<SensorChange> changes) {
+        execute(service -> service.changeSensorActivationStatuses(changes));
+    }
+
+    public void processImage(BufferedImage currentCameraImage) {
+        execute(service -> service.processImage(currentCameraImage));
+    }
+
+    public void processImages(List<BufferedImage> cameraImages) {
+        execute(service -> service.processImages(cameraImages));
+    }
+
+    public void addSensor(Sensor sensor) {
+        execute(service -> service.addSensor(sensor));
+    }
+
+    public void removeSensor(Sensor sensor) {
+        execute(service -> service.removeSensor(sensor));
+    }
+
+    /**
+     * Blocks until every command queued before this call has been applied.
+     * @throws IllegalStateException if called from the event loop thread, which would never return
+     */
+    public void awaitProcessed() throws InterruptedException {
+        if (inEventLoop()) {
+            throw new IllegalStateException("Cannot wait for the event loop from inside it");
+        }
+        CountDownLatch processed = new CountDownLatch(1);
+        execute(service -> processed.countDown());
+        processed.await();
+    }
+
+    /**
+     * @return True if the calling thread is the event loop thread
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    private void wake() {
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void run() {
+        int idlePolls = 0;
+        while (true) {
+            Consumer<SecurityService> command = commands.poll();
+            if (command != null) {
+                idlePolls = 0;
+                apply(command);
+            } else if (!running) {
+                //a producer that saw the loop open may not have published yet; wait for it
+                if (producers.get() == 0 && commands.isEmpty()) {
+                    return;
+                }
+                Thread.onSpinWait();
+            } else if (++idlePolls < SPIN_LIMIT) {
+                Thread.onSpinWait();
+            } else {
+                //producers check the flag after publishing, so one of us always sees the other
+                parked = true;
+                if (commands.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                idlePolls = 0;
+            }
+        }
+    }
+
+    private void apply(Consumer<SecurityService> command) {
+        try {
+            command.accept(securityService);
+        } catch (RuntimeException e) {
+            //a failing command must not stop the loop
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    /**
+     * Stops the event loop once it has applied every command accepted before or during the close.
+     * Called from the event loop itself, it returns straight away and the loop drains and exits
+     * after the current command; called again from another thread, it waits for that.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        if (inEventLoop()) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        thread.join();
+    }
+}
@@ -0,0 +1,70 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.Sensor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+
+/**
+ * The kinds of event published on a {@link SecurityEventBus}, each with the type of its payload
+ * and the rule for merging two payloads that are waiting for the same subscriber.
+ */
+public final class SecurityEventType<T> {
+
+    /**
+     * The alarm status changed. Only the latest status is delivered.
+     */
+    public static final SecurityEventType<AlarmStatus> ALARM_STATUS_CHANGED =
+            new SecurityEventType<>("ALARM_STATUS_CHANGED", 0, (older, newer) -> newer);
+
+    /**
+     * The camera image was analyzed. Only the latest result is delivered.
+     */
+    public static final SecurityEventType<Boolean> CAT_DETECTED =
+            new SecurityEventType<>("CAT_DETECTED", 1, (older, newer) -> newer);
+
+    /**
+     * Sensors were activated, deactivated, added or removed. Waiting payloads are merged, so the
+     * subscriber receives every sensor that changed since it was last notified.
+     */
+    public static final SecurityEventType<Collection<Sensor>> SENSORS_CHANGED =
+            new SecurityEventType<>("SENSORS_CHANGED", 2, SecurityEventType::union);
+
+    static final int COUNT = 3;
+
+    private final String name;
+    private final int index;
+    private final BinaryOperator<T> coalesce;
+
+    private SecurityEventType(String name, int index, BinaryOperator<T> coalesce) {
+        this.name = name;
+        this.index = index;
+        this.coalesce = coalesce;
+    }
+
+    private static Collection<Sensor> union(Collection<Sensor> older, Collection<Sensor> newer) {
+        Set<Sensor> merged = new LinkedHashSet<>(older);
+        merged.addAll(newer);
+        return Collections.unmodifiableSet(merged);
+    }
+
+    int index() {
+        return index;
+    }
+
+    /**
+     * Merges a payload into one that has not been delivered yet. Must not modify either argument.
+     */
+    T coalesce(T older, T newer) {
+        return coalesce.apply(older, newer);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
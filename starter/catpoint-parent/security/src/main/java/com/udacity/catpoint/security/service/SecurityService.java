@@ -8,8 +8,22 @@ import com.udacity.catpoint.security.data.SecurityRepository;
 import com.udacity.catpoint.security.data.Sensor;
 
 import java.awt.image.BufferedImage;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
 /**
  * Service that receives information about changes to the security system. Responsible for
@@ -17,18 +31,81 @@ import java.util.Set;
  * <p>
  * This is the class that should contain most of the business logic for our system, and it is the
  * class you will be writing unit tests for.
+ * <p>
+ * The service is the authority on the state the alarm rules depend on. It loads that state from
+ * the repository on first use and keeps it as a versioned {@link SecurityState}, writing every
+ * change through to the repository, so deciding what an event does never touches storage. If
+ * the repository is changed behind the service's back, call {@link #reloadState()} or
+ * {@link #invalidateState()}.
+ * <p>
+ * The state is packed into one {@code long} (see {@link SecurityState}). Each operation works
+ * out its whole next state from the current one, its own changes and the alarm status the rules
+ * give, and installs it with a single compare-and-set, so {@link #snapshot()} gives any number of
+ * concurrent readers a consistent view without locks: never an alarm without the change that
+ * raised it.
+ * <p>
+ * Images are classified on an image executor and the result applied on a result executor, both
+ * direct by default so {@link #processImage} completes before it returns. With a pool such as
+ * {@link #newImageExecutor(int, int)} the caller is never held up by a slow image service.
  */
 public class SecurityService {
 
     final private ImageService imageService;
     final private SecurityRepository securityRepository;
-    final private Set<StatusListener> statusListeners = new HashSet<>();
+    final private SecurityEventBus eventBus;
+    final private Executor imageExecutor;
+    final private Executor resultExecutor;
+
+    //sequence number of the last image submitted, and of the newest image whose result was applied
+    private final AtomicLong imageSequence = new AtomicLong();
+    private final AtomicLong appliedImageSequence = new AtomicLong();
 
-    private boolean cameraShowsCat = false;
+    //packed SecurityState; its loaded bit is clear until first loaded, and again after invalidateState
+    private final AtomicLong state = new AtomicLong(SecurityState.UNLOADED);
 
+    /**
+     * Creates a service that notifies its listeners synchronously, on the thread that changed the state.
+     */
     public SecurityService(SecurityRepository securityRepository, ImageService imageService) {
+        this(securityRepository, imageService, Runnable::run);
+    }
+
+    /**
+     * @param listenerExecutor Executor that events are delivered on. Events are coalesced per
+     *                         subscriber while they wait; see {@link SecurityEventBus}.
+     */
+    public SecurityService(SecurityRepository securityRepository, ImageService imageService, Executor listenerExecutor) {
+        this(securityRepository, imageService, listenerExecutor, Runnable::run, Runnable::run);
+    }
+
+    /**
+     * @param listenerExecutor Executor that events are delivered on, as above
+     * @param imageExecutor Executor images are classified on. Bound its queue so a fast camera
+     *                      cannot pile up work; see {@link #newImageExecutor(int, int)}.
+     * @param resultExecutor Executor classification results are applied to the state on. It must
+     *                       run them wherever the service's other changes are made, e.g.
+     *                       {@code SwingUtilities::invokeLater} when the service is driven by the GUI.
+     */
+    public SecurityService(SecurityRepository securityRepository, ImageService imageService, Executor listenerExecutor,
+                           Executor imageExecutor, Executor resultExecutor) {
         this.securityRepository = securityRepository;
         this.imageService = imageService;
+        this.eventBus = new SecurityEventBus(listenerExecutor);
+        this.imageExecutor = imageExecutor;
+        this.resultExecutor = resultExecutor;
+    }
+
+    /**
+     * Creates a pool of daemon threads for classifying images, that rejects new images rather
+     * than queueing more than {@code queueCapacity} of them.
+     */
+    public static ExecutorService newImageExecutor(int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "image-classifier-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -43,24 +120,121 @@ public class SecurityService {
         //  Requirement 10: If the system is armed, reset all sensors to inactive.
         //  Requirement 11: If the system is armed-home while the camera shows a cat, set the alarm status to alarm.
 
+        ensureStateLoaded();
+        AlarmEvent event;
+        Collection<Sensor> deactivated;
         switch (armingStatus) {
-            case DISARMED:
-                setAlarmStatus(AlarmStatus.NO_ALARM);
-                break;
             case ARMED_HOME:
-                if (cameraShowsCat) setAlarmStatus(AlarmStatus.ALARM);
-                //no break :  intentional falling through switch case
+                event = AlarmEvent.ARMED_HOME;
+                deactivated = securityRepository.resetAllSensors();
+                break;
             case ARMED_AWAY:
-                Set<Sensor> sensors = new HashSet<>(getSensors());
-                sensors.stream().forEach(s -> changeSensorActivationStatus(s, false));
+                event = AlarmEvent.ARMED_AWAY;
+                deactivated = securityRepository.resetAllSensors();
+                break;
+            default:
+                event = AlarmEvent.DISARMED;
+                deactivated = List.of();
                 break;
         }
         securityRepository.setArmingStatus(armingStatus);
+        StateChange change = changeState(next -> {
+            next.armingStatus(armingStatus).event(event);
+            if (event != AlarmEvent.DISARMED) {
+                next.activeSensorCount(0);
+            }
+            return deactivated.isEmpty() ? next : next.event(AlarmEvent.SENSOR_DEACTIVATED);
+        });
+        if (!deactivated.isEmpty()) {
+            eventBus.publish(SecurityEventType.SENSORS_CHANGED, deactivated);
+        }
+        writeAlarmStatus(change);
+    }
+
+    /**
+     * @return The current state. Loaded from the repository if it is not cached yet.
+     */
+    public SecurityState getState() {
+        SecurityState current = new SecurityState(state.get());
+        return current.isLoaded() ? current : reloadState();
     }
 
-    private boolean anySensorActive() {
+    /**
+     * Wait-free read of the current state: one volatile read, never blocks and never touches the
+     * repository. Safe to call from any thread at any rate. Before the state is first loaded the
+     * snapshot is not {@link SecurityState#isLoaded() loaded} and holds null statuses.
+     */
+    public SecurityState snapshot() {
+        return new SecurityState(state.get());
+    }
+
+    /**
+     * Reads the arming status, alarm status and active sensor count from the repository again,
+     * replacing the cached state with a newer version. Whether the camera shows a cat is not
+     * stored in the repository and is kept.
+     * @return The reloaded state
+     */
+    public SecurityState reloadState() {
+        ArmingStatus armingStatus = securityRepository.getArmingStatus();
+        AlarmStatus alarmStatus = securityRepository.getAlarmStatus();
+        int activeSensorCount = securityRepository.getActiveSensorCount();
+        return new SecurityState(state.updateAndGet(word -> SecurityState.loaded(word, armingStatus, alarmStatus, activeSensorCount)));
+    }
+
+    /**
+     * Drops the cached state, so it is read from the repository again the next time it is needed.
+     */
+    public void invalidateState() {
+        state.updateAndGet(SecurityState::unloaded);
+    }
+
+    /**
+     * Loads the state if it is not cached. Called before a sensor change reaches the repository,
+     * so a freshly loaded count cannot already include the change it is then adjusted by.
+     */
+    private void ensureStateLoaded() {
+        getState();
+    }
+
+    /**
+     * Installs the next state of one operation with a single compare-and-set, working it out again
+     * from the newer state if another thread got there first.
+     * @param operation Applies the operation's changes and events to the current state; may run more than once
+     */
+    private StateChange changeState(UnaryOperator<StateChange> operation) {
+        ensureStateLoaded();
+        StateChange change;
+        do {
+            change = operation.apply(new StateChange(state.get()));
+        } while (!state.compareAndSet(change.previous, change.next()));
+        return change;
+    }
+
+    /**
+     * Writes the alarm status through and announces it, if the alarm rules set it in the change.
+     */
+    private void writeAlarmStatus(StateChange change) {
+        if (change.alarmRuleApplied) {
+            AlarmStatus status = change.alarmStatus();
+            securityRepository.setAlarmStatus(status);
+            eventBus.publish(SecurityEventType.ALARM_STATUS_CHANGED, status);
+        }
+    }
 
-        return getSensors().stream().anyMatch(Sensor::getActive);
+    /**
+     * Deactivates every sensor at once: one repository reset, one sensor status notification, and the
+     * same alarm handling that deactivating the previously active sensors one by one would cause.
+     */
+    public void deactivateAll() {
+        ensureStateLoaded();
+        Collection<Sensor> deactivated = securityRepository.resetAllSensors();
+        StateChange change = changeState(next -> deactivated.isEmpty()
+                ? next.activeSensorCount(0)
+                : next.activeSensorCount(0).event(AlarmEvent.SENSOR_DEACTIVATED));
+        if (!deactivated.isEmpty()) {
+            eventBus.publish(SecurityEventType.SENSORS_CHANGED, deactivated);
+        }
+        writeAlarmStatus(change);
     }
 
     /**
@@ -72,13 +246,17 @@ public class SecurityService {
     private void catDetected(Boolean cat) {
         // Requirement 7 : If the image service identifies an image containing a cat while the system is armed-home, put the system into alarm status.
         // Requirement 8 :  If the image service identifies an image that does not contain a cat, change the status to no alarm as long as the sensors are not active.
-        if (cat && getArmingStatus() == ArmingStatus.ARMED_HOME) {
-            setAlarmStatus(AlarmStatus.ALARM);
-        } else if (!cat && !anySensorActive()) {
-            setAlarmStatus(AlarmStatus.NO_ALARM);
-        }
-        cameraShowsCat = cat;
-        statusListeners.stream().forEach(sl -> sl.catDetected(cat));
+        StateChange change = changeState(next -> next.cameraShowsCat(cat)
+                .event(cat ? AlarmEvent.CAT_DETECTED : AlarmEvent.NO_CAT_DETECTED));
+        writeAlarmStatus(change);
+        eventBus.publish(SecurityEventType.CAT_DETECTED, cat);
+    }
+
+    /**
+     * @return The bus that state changes are published on, for subscribing to individual event types
+     */
+    public SecurityEventBus getEventBus() {
+        return eventBus;
     }
 
     /**
@@ -87,11 +265,11 @@ public class SecurityService {
      * @param statusListener
      */
     public void addStatusListener(StatusListener statusListener) {
-        statusListeners.add(statusListener);
+        eventBus.addStatusListener(statusListener);
     }
 
     public void removeStatusListener(StatusListener statusListener) {
-        statusListeners.remove(statusListener);
+        eventBus.removeStatusListener(statusListener);
     }
 
     /**
@@ -101,34 +279,66 @@ public class SecurityService {
      */
     public void setAlarmStatus(AlarmStatus status) {
         securityRepository.setAlarmStatus(status);
-        statusListeners.stream().forEach(sl -> sl.notify(status));
+        state.updateAndGet(word -> SecurityState.withAlarmStatus(word, status));
+        eventBus.publish(SecurityEventType.ALARM_STATUS_CHANGED, status);
     }
 
     /**
-     * Internal method for updating the alarm status when a sensor has been activated.
+     * One operation's next state, worked out from the packed state it replaces: the operation sets
+     * its fields, then the alarm rules for its events are applied in order, each seeing the fields
+     * as changed so far. Pure, so it can be worked out again if the compare-and-set loses a race.
      */
-    private void handleSensorActivated() {
-        // Requirement 1: If alarm is armed and a sensor becomes activated, put the system into pending alarm status.
-        // Requirement 2: If alarm is armed and a sensor becomes activated and the system is already pending alarm, set the alarm status to alarm.
-        // Requirement 4 : If alarm is active, change in sensor state should not affect the alarm state.
-        if (getArmingStatus() == ArmingStatus.ARMED_HOME
-                || getArmingStatus() == ArmingStatus.ARMED_AWAY) {
-            switch (getAlarmStatus()) {
-                case PENDING_ALARM -> setAlarmStatus(AlarmStatus.ALARM);
-                case NO_ALARM -> setAlarmStatus(AlarmStatus.PENDING_ALARM);
+    private static final class StateChange {
+        private final long previous;
+        private long word;
+        private boolean alarmRuleApplied;
+
+        private StateChange(long previous) {
+            this.previous = previous;
+            this.word = previous;
+        }
+
+        private StateChange armingStatus(ArmingStatus armingStatus) {
+            word = SecurityState.withArmingStatus(word, armingStatus);
+            return this;
+        }
+
+        private StateChange cameraShowsCat(boolean cameraShowsCat) {
+            word = SecurityState.withCameraShowsCat(word, cameraShowsCat);
+            return this;
+        }
+
+        private StateChange activeSensorCount(int activeSensorCount) {
+            word = SecurityState.withActiveSensorCount(word, activeSensorCount);
+            return this;
+        }
+
+        private StateChange adjustActiveSensorCount(int delta) {
+            return delta == 0 ? this : activeSensorCount(SecurityState.activeSensorCount(word) + delta);
+        }
+
+        /**
+         * Moves the alarm status as the alarm rules say for the event. The rules are a single
+         * table lookup against the state as changed so far.
+         */
+        private StateChange event(AlarmEvent event) {
+            // Requirements 1-5, 7-9 and 11, see AlarmTransitionTable
+            SecurityState current = new SecurityState(word);
+            AlarmStatus next = AlarmTransitionTable.next(current.getArmingStatus(), current.getAlarmStatus(), event,
+                    current.anySensorActive(), current.cameraShowsCat());
+            if (next != null) {
+                word = SecurityState.withAlarmStatus(word, next);
+                alarmRuleApplied = true;
             }
+            return this;
         }
 
-    }
+        private AlarmStatus alarmStatus() {
+            return new SecurityState(word).getAlarmStatus();
+        }
 
-    /**
-     * Internal method for updating the alarm status when a sensor has been deactivated
-     */
-    private void handleSensorDeactivated() {
-        // Requirement 3 : If pending alarm and all sensors are inactive, return to no alarm state.
-        // Requirement 4 : If alarm is active, change in sensor state should not affect the alarm state.
-        if (getAlarmStatus() == AlarmStatus.PENDING_ALARM && !anySensorActive()) {
-            setAlarmStatus(AlarmStatus.NO_ALARM);
+        private long next() {
+            return SecurityState.nextVersion(previous, word);
         }
     }
 
@@ -143,51 +353,166 @@ public class SecurityService {
         // Requirement 6 : If a sensor is deactivated while already inactive, make no changes to the alarm state.
 
         boolean priorActivation = sensor.getActive();
+        ensureStateLoaded();
 
         // Update Sensor with change
         sensor.setActive(active);
         securityRepository.updateSensor(sensor);
-        statusListeners.stream().forEach(StatusListener::sensorStatusChanged);
+        int delta = active == priorActivation ? 0 : active ? 1 : -1;
 
         // Handle Status change
-        if (active) {
-            handleSensorActivated();
-        } else if (priorActivation) {
-            handleSensorDeactivated();
+        AlarmEvent event = active ? AlarmEvent.SENSOR_ACTIVATED : priorActivation ? AlarmEvent.SENSOR_DEACTIVATED : null;
+        StateChange change = changeState(next -> event == null
+                ? next.adjustActiveSensorCount(delta)
+                : next.adjustActiveSensorCount(delta).event(event));
+        eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor));
+        writeAlarmStatus(change);
+    }
+
+    /**
+     * Applies a burst of sensor changes in order, following the same rules as calling
+     * {@link #changeSensorActivationStatus(Sensor, Boolean)} once per change, but installed as one
+     * state change. The sensors are persisted with one batch update, listeners receive a single
+     * sensor status notification, and the alarm status is only written and announced once, if it
+     * ends up different from where it started.
+     *
+     * @param changes The changes to apply, in the order they happened
+     */
+    public void changeSensorActivationStatuses(Collection<SensorChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        ensureStateLoaded();
+        int[] deltas = new int[changes.size()];
+        AlarmEvent[] events = new AlarmEvent[changes.size()];
+        Set<Sensor> updated = new LinkedHashSet<>();
+        int i = 0;
+        for (SensorChange change : changes) {
+            Sensor sensor = change.getSensor();
+            boolean priorActivation = sensor.getActive();
+            sensor.setActive(change.isActive());
+            updated.add(sensor);
+            deltas[i] = (change.isActive() ? 1 : 0) - (priorActivation ? 1 : 0);
+            // Requirement 6: deactivating an inactive sensor is not an event
+            events[i] = change.isActive() ? AlarmEvent.SENSOR_ACTIVATED : priorActivation ? AlarmEvent.SENSOR_DEACTIVATED : null;
+            i++;
         }
 
+        securityRepository.updateSensors(updated);
+        StateChange change = changeState(next -> {
+            for (int n = 0; n < deltas.length; n++) {
+                next.adjustActiveSensorCount(deltas[n]);
+                if (events[n] != null) {
+                    next.event(events[n]);
+                }
+            }
+            return next;
+        });
+        eventBus.publish(SecurityEventType.SENSORS_CHANGED, Collections.unmodifiableSet(updated));
+        AlarmStatus alarmStatus = change.alarmStatus();
+        if (alarmStatus != new SecurityState(change.previous).getAlarmStatus()) {
+            securityRepository.setAlarmStatus(alarmStatus);
+            eventBus.publish(SecurityEventType.ALARM_STATUS_CHANGED, alarmStatus);
+        }
     }
 
     /**
      * Send an image to the SecurityService for processing. The securityService will use the provided
      * ImageService to analyze the image for cats and update the alarm status accordingly.
+     * <p>
+     * The image is classified on the image executor and the alarm updated on the result executor
+     * when the result arrives. Results can arrive out of order; one for an image older than an
+     * image whose result has already been applied is stale and is dropped.
      *
      * @param currentCameraImage
+     * @return Completes with the classification once it has been applied or dropped, or
+     * exceptionally if the image service failed or the image executor rejected the image
      */
-    public void processImage(BufferedImage currentCameraImage) {
-        catDetected(imageService.imageContainsCat(currentCameraImage, 50.0f));
+    public CompletableFuture<Boolean> processImage(BufferedImage currentCameraImage) {
+        long sequence = imageSequence.incrementAndGet();
+        CompletableFuture<Boolean> classification;
+        try {
+            classification = imageService.imageContainsCatAsync(currentCameraImage, 50.0f, imageExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return classification.thenApplyAsync(cat -> {
+            applyClassification(sequence, cat);
+            return cat;
+        }, resultExecutor);
+    }
+
+    /**
+     * Sends the latest frame of several cameras to the ImageService as one batch, so backends can
+     * share their per-call overhead across the cameras. The site counts as showing a cat if any
+     * of the frames does, and the alarm is updated once for the batch.
+     * <p>
+     * The batch is classified on the image executor and applied on the result executor like a
+     * single image, and it takes part in the same ordering: a stale batch or image is dropped.
+     *
+     * @return Completes with one result per frame, in order, once applied or dropped, or
+     * exceptionally if the image service failed or the image executor rejected the batch
+     */
+    public CompletableFuture<List<Boolean>> processImages(List<BufferedImage> cameraImages) {
+        if (cameraImages.isEmpty()) {
+            throw new IllegalArgumentException("No camera images to process");
+        }
+        long sequence = imageSequence.incrementAndGet();
+        List<BufferedImage> images = List.copyOf(cameraImages);
+        CompletableFuture<List<Boolean>> classification;
+        try {
+            classification = CompletableFuture.supplyAsync(() -> imageService.imageContainsCat(images, 50.0f), imageExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return classification.thenApplyAsync(cats -> {
+            if (cats.size() != images.size()) {
+                throw new IllegalStateException("Image service returned " + cats.size() + " results for " + images.size() + " images");
+            }
+            applyClassification(sequence, cats.contains(Boolean.TRUE));
+            return cats;
+        }, resultExecutor);
+    }
+
+    private void applyClassification(long sequence, boolean cat) {
+        if (appliedImageSequence.getAndAccumulate(sequence, Math::max) < sequence) {
+            catDetected(cat);
+        }
     }
 
     public AlarmStatus getAlarmStatus() {
-        return securityRepository.getAlarmStatus();
+        return getState().getAlarmStatus();
     }
 
     public Set<Sensor> getSensors() {
         return securityRepository.getSensors();
     }
 
+    /**
+     * @return The sensor with the given id, or null if there is none
+     */
+    public Sensor getSensor(UUID sensorId) {
+        return securityRepository.getSensor(sensorId);
+    }
+
     public void addSensor(Sensor sensor) {
+        ensureStateLoaded();
         securityRepository.addSensor(sensor);
-        if (sensor.getActive()) handleSensorActivated();
+        if (sensor.getActive()) {
+            writeAlarmStatus(changeState(next -> next.adjustActiveSensorCount(1).event(AlarmEvent.SENSOR_ACTIVATED)));
+        }
     }
 
     public void removeSensor(Sensor sensor) {
+        ensureStateLoaded();
         securityRepository.removeSensor(sensor);
-        if (sensor.getActive()) handleSensorDeactivated();
+        if (sensor.getActive()) {
+            writeAlarmStatus(changeState(next -> next.adjustActiveSensorCount(-1).event(AlarmEvent.SENSOR_DEACTIVATED)));
+        }
     }
 
     public ArmingStatus getArmingStatus() {
-        return securityRepository.getArmingStatus();
+        return getState().getArmingStatus();
     }
 
 }
@@ -0,0 +1,140 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+
+/**
+ * Immutable snapshot of the state the alarm rules depend on, as cached by {@link SecurityService}.
+ * <p>
+ * The whole state is packed into a single {@code long}, so the service can swap it with one
+ * compare-and-set and readers can take a consistent copy with one volatile read. Layout, from
+ * the low bits up:
+ * <pre>
+ * bits  0-1   arming status ordinal, 3 for null
+ * bits  2-3   alarm status ordinal, 3 for null
+ * bit   4     camera shows a cat
+ * bit   5     loaded: the statuses and count have been read from the repository
+ * bits  6-29  active sensor count, saturating at {@link #MAX_ACTIVE_SENSOR_COUNT}
+ * bits 30-63  version, incremented by every change
+ * </pre>
+ * Every change produces a new snapshot with the next version, so two snapshots with the same
+ * version always hold the same state.
+ */
+public final class SecurityState {
+
+    public static final int MAX_ACTIVE_SENSOR_COUNT = (1 << 24) - 1;
+
+    private static final int ALARM_SHIFT = 2;
+    private static final long STATUS_MASK = 0b11;
+    private static final long NULL_STATUS = 0b11;
+    private static final long CAMERA_BIT = 1L << 4;
+    private static final long LOADED_BIT = 1L << 5;
+    private static final int COUNT_SHIFT = 6;
+    private static final long COUNT_MASK = (long) MAX_ACTIVE_SENSOR_COUNT << COUNT_SHIFT;
+    private static final int VERSION_SHIFT = 30;
+    private static final long VERSION_ONE = 1L << VERSION_SHIFT;
+
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+
+    /**
+     * The state before anything has been loaded: version 0, null statuses, no active sensors
+     */
+    static final long UNLOADED = NULL_STATUS | NULL_STATUS << ALARM_SHIFT;
+
+    private final long word;
+
+    SecurityState(long word) {
+        this.word = word;
+    }
+
+    public long getVersion() {
+        return word >>> VERSION_SHIFT;
+    }
+
+    public ArmingStatus getArmingStatus() {
+        long ordinal = word & STATUS_MASK;
+        return ordinal == NULL_STATUS ? null : ARMING_STATUSES[(int) ordinal];
+    }
+
+    public AlarmStatus getAlarmStatus() {
+        long ordinal = word >>> ALARM_SHIFT & STATUS_MASK;
+        return ordinal == NULL_STATUS ? null : ALARM_STATUSES[(int) ordinal];
+    }
+
+    public int getActiveSensorCount() {
+        return activeSensorCount(word);
+    }
+
+    public boolean anySensorActive() {
+        return (word & COUNT_MASK) != 0;
+    }
+
+    public boolean cameraShowsCat() {
+        return (word & CAMERA_BIT) != 0;
+    }
+
+    /**
+     * @return False until the service has read the state from its repository, and again after it
+     * has been invalidated. An unloaded snapshot holds the last known values.
+     */
+    public boolean isLoaded() {
+        return (word & LOADED_BIT) != 0;
+    }
+
+    static int activeSensorCount(long word) {
+        return (int) ((word & COUNT_MASK) >>> COUNT_SHIFT);
+    }
+
+    private static long statusBits(Enum<?> status) {
+        return status == null ? NULL_STATUS : status.ordinal();
+    }
+
+    private static long countBits(int activeSensorCount) {
+        return (long) Math.max(0, Math.min(MAX_ACTIVE_SENSOR_COUNT, activeSensorCount)) << COUNT_SHIFT;
+    }
+
+    static long withArmingStatus(long word, ArmingStatus armingStatus) {
+        return (word & ~STATUS_MASK | statusBits(armingStatus)) + VERSION_ONE;
+    }
+
+    static long withAlarmStatus(long word, AlarmStatus alarmStatus) {
+        return (word & ~(STATUS_MASK << ALARM_SHIFT) | statusBits(alarmStatus) << ALARM_SHIFT) + VERSION_ONE;
+    }
+
+    static long withActiveSensorCount(long word, int activeSensorCount) {
+        return (word & ~COUNT_MASK | countBits(activeSensorCount)) + VERSION_ONE;
+    }
+
+    static long withCameraShowsCat(long word, boolean cameraShowsCat) {
+        return (cameraShowsCat ? word | CAMERA_BIT : word & ~CAMERA_BIT) + VERSION_ONE;
+    }
+
+    /**
+     * @return The word with the statuses and count replaced by freshly loaded values
+     */
+    static long loaded(long word, ArmingStatus armingStatus, AlarmStatus alarmStatus, int activeSensorCount) {
+        long kept = word & (CAMERA_BIT | ~(VERSION_ONE - 1));
+        return (kept | statusBits(armingStatus) | statusBits(alarmStatus) << ALARM_SHIFT
+                | countBits(activeSensorCount) | LOADED_BIT) + VERSION_ONE;
+    }
+
+    /**
+     * @return The fields of {@code changed} at the version after {@code previous}'s, for an
+     * operation that changed several fields of {@code previous} at once
+     */
+    static long nextVersion(long previous, long changed) {
+        return (changed & (VERSION_ONE - 1) | previous & ~(VERSION_ONE - 1)) + VERSION_ONE;
+    }
+
+    static long unloaded(long word) {
+        return word & ~LOADED_BIT;
+    }
+
+    @Override
+    public String toString() {
+        return "SecurityState{version=" + getVersion() + ", armingStatus=" + getArmingStatus() + ", alarmStatus=" + getAlarmStatus()
+                + ", activeSensorCount=" + getActiveSensorCount() + ", cameraShowsCat=" + cameraShowsCat()
+                + ", loaded=" + isLoaded() + "}";
+    }
+}
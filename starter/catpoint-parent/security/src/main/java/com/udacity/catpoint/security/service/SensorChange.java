@@ -0,0 +1,24 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.Sensor;
+
+/**
+ * A requested change to the activation status of one sensor, as delivered in bulk by a sensor gateway.
+ */
+public class SensorChange {
+    private final Sensor sensor;
+    private final boolean active;
+
+    public SensorChange(Sensor sensor, boolean active) {
+        this.sensor = sensor;
+        this.active = active;
+    }
+
+    public Sensor getSensor() {
+        return sensor;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+}
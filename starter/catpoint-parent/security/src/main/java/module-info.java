@@ -5,7 +5,6 @@ module securityService {
     requires com.google.gson;
     requires java.prefs;
     requires com.google.common;
-    opens com.udacity.catpoint.security.data to com.google.gson;
 
 }
 
@@ -0,0 +1,136 @@
+package com.udacity.catpoint.security.application;
+
+import com.udacity.catpoint.image.service.CachingImageService;
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.image.service.LocalImageService;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.DurabilityMode;
+import com.udacity.catpoint.security.data.JournalSecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Unit tests for HeadlessConfig parsing and the CatpointDaemon wiring it drives.
+ */
+public class CatpointDaemonTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void noOptions_defaults() {
+        HeadlessConfig config = HeadlessConfig.fromArgs("--headless");
+        assertEquals(HeadlessConfig.RepositoryType.JOURNAL, config.getRepositoryType());
+        assertNull(config.getJournalPath());
+        assertNull(config.getDurabilityMode());
+        assertEquals(Duration.ofSeconds(1), config.getFlushInterval());
+        assertEquals("fake", config.getImageService());
+        assertEquals(CachingImageService.DEFAULT_CAPACITY, config.getImageCacheSize());
+        assertTrue(config.isMotionGate());
+        assertTrue(config.isLogEvents());
+        assertFalse(config.isDryRun());
+    }
+
+    @Test
+    public void commandLine_overridesConfigFile() throws Exception {
+        Path file = tempDir.resolve("catpoint.properties");
+        Files.writeString(file, "repository=memory\ndurability=coalesced\nlogEvents=false\n");
+        HeadlessConfig config = HeadlessConfig.fromArgs("--config=" + file, "--repository=journal", "--dry-run");
+        assertEquals(HeadlessConfig.RepositoryType.JOURNAL, config.getRepositoryType());
+        assertEquals(DurabilityMode.COALESCED, config.getDurabilityMode());
+        assertFalse(config.isLogEvents());
+        assertTrue(config.isDryRun());
+    }
+
+    @Test
+    public void badOptions_rejectedUpFront() {
+        assertThrows(IllegalArgumentException.class, () -> HeadlessConfig.fromArgs("--unknown=1"));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessConfig.fromArgs("repository=memory"));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessConfig.fromArgs("--repository=cloud"));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessConfig.fromArgs("--flushInterval=0"));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessConfig.fromArgs("--imageCache=-1"));
+        assertThrows(UncheckedIOException.class, () -> HeadlessConfig.fromArgs("--config=" + tempDir.resolve("missing")));
+    }
+
+    @Test
+    public void imageService_fakeOrLoadedByClassName() {
+        assertTrue(CatpointDaemon.createImageService("fake") instanceof FakeImageService);
+        assertTrue(CatpointDaemon.createImageService(FakeImageService.class.getName()) instanceof FakeImageService);
+        assertTrue(CatpointDaemon.createImageService("local") instanceof LocalImageService);
+        assertThrows(IllegalArgumentException.class, () -> CatpointDaemon.createImageService("java.lang.String"));
+        assertThrows(IllegalArgumentException.class, () -> CatpointDaemon.createImageService("no.such.ImageService"));
+    }
+
+    @Test
+    public void port_startsServerOnlyWhenConfigured() throws Exception {
+        try (CatpointDaemon daemon = new CatpointDaemon(HeadlessConfig.fromArgs("--repository=memory", "--logEvents=false"))) {
+            assertEquals(-1, daemon.getPort());
+        }
+        try (CatpointDaemon daemon = new CatpointDaemon(HeadlessConfig.fromArgs("--repository=memory", "--port=0", "--logEvents=false"))) {
+            assertTrue(daemon.getPort() > 0);
+            assertEquals(-1, daemon.getBinaryPort());
+        }
+        try (CatpointDaemon daemon = new CatpointDaemon(HeadlessConfig.fromArgs("--repository=memory", "--port=0", "--binaryPort=0",
+                "--logEvents=false"))) {
+            assertTrue(daemon.getPort() > 0);
+            assertTrue(daemon.getBinaryPort() > 0);
+        }
+        assertThrows(IllegalArgumentException.class, () -> HeadlessConfig.fromArgs("--port=70000"));
+    }
+
+    // State written through a coalescing cache reaches the journal when the daemon is closed
+    @Test
+    public void journalWithWriteBehind_stateSurvivesRestart() throws Exception {
+        Path journal = tempDir.resolve("security.journal");
+        String[] args = {"--journal=" + journal, "--durability=coalesced", "--flushInterval=60000", "--logEvents=false"};
+        Sensor sensor = new Sensor("Door", SensorType.DOOR);
+        try (CatpointDaemon daemon = new CatpointDaemon(HeadlessConfig.fromArgs(args))) {
+            daemon.getSecurityService().addSensor(sensor);
+            daemon.getSecurityService().setArmingStatus(ArmingStatus.ARMED_AWAY);
+        }
+        try (CatpointDaemon daemon = new CatpointDaemon(HeadlessConfig.fromArgs(args))) {
+            assertEquals(ArmingStatus.ARMED_AWAY, daemon.getSecurityService().getArmingStatus());
+            assertEquals(sensor.getSensorId(), daemon.getSecurityService().getSensors().iterator().next().getSensorId());
+        }
+    }
+
+    // The binary port is taken, so the last step fails after the journal and write-behind cache were started
+    @Test
+    public void failedStart_closesWhatWasStarted() throws Exception {
+        Path journal = tempDir.resolve("security.journal");
+        //a crashed run left one record in the journal, which only a close compacts away
+        JournalSecurityRepositoryImpl crashed = new JournalSecurityRepositoryImpl(journal);
+        crashed.addSensor(new Sensor("Door", SensorType.DOOR));
+        try (ServerSocket taken = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+            UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> new CatpointDaemon(HeadlessConfig.fromArgs(
+                    "--journal=" + journal, "--durability=coalesced", "--port=0", "--binaryPort=" + taken.getLocalPort(),
+                    "--logEvents=false")));
+            assertEquals(0, e.getSuppressed().length);
+            assertEquals(0, Files.size(journal));
+        } finally {
+            crashed.close();
+        }
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (writeBehindRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(writeBehindRunning());
+    }
+
+    private static boolean writeBehindRunning() {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch(thread -> thread.getName().equals("security-write-behind"));
+    }
+}
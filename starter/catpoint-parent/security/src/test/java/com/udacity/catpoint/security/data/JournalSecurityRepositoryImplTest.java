@@ -0,0 +1,207 @@
+package com.udacity.catpoint.security.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Unit tests for JournalSecurityRepositoryImpl: state survives a restart through journal replay
+ * and compaction, and a record torn by a crash neither breaks replay nor swallows the records
+ * written after it.
+ */
+public class JournalSecurityRepositoryImplTest {
+
+    //never compacts on its own, so the tests see the journal they wrote
+    private static final Duration NEVER = Duration.ofDays(1);
+
+    @TempDir
+    Path tempDir;
+
+    private Path journalPath;
+    private Path snapshotPath;
+    private final List<JournalSecurityRepositoryImpl> opened = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        journalPath = tempDir.resolve("security.journal");
+        snapshotPath = tempDir.resolve("security.journal.snapshot");
+    }
+
+    @AfterEach
+    void closeAll() {
+        opened.forEach(JournalSecurityRepositoryImpl::close);
+    }
+
+    private JournalSecurityRepositoryImpl open() {
+        return new JournalSecurityRepositoryImpl(journalPath, NEVER, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Opens the journal while the previous instance is still open, as a process restarting after a
+     * crash would: nothing was compacted or closed. The instance is closed after the test.
+     */
+    private JournalSecurityRepositoryImpl reopenAfterCrash() {
+        JournalSecurityRepositoryImpl repository = open();
+        opened.add(repository);
+        return repository;
+    }
+
+    @Test
+    public void restart_replaysSensorsAndStatuses() {
+        JournalSecurityRepositoryImpl repository = open();
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        Sensor window = new Sensor("Kitchen Window", SensorType.WINDOW);
+        Sensor motion = new Sensor("Hallway", SensorType.MOTION);
+        repository.addSensor(door);
+        repository.addSensor(window);
+        repository.addSensor(motion);
+        door.setActive(true);
+        repository.updateSensor(door);
+        repository.removeSensor(window);
+        repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        opened.add(repository);
+
+        JournalSecurityRepositoryImpl restarted = reopenAfterCrash();
+        assertEquals(2, restarted.getSensors().size());
+        assertTrue(restarted.getSensor(door.getSensorId()).getActive());
+        assertNull(restarted.getSensor(window.getSensorId()));
+        assertEquals(1, restarted.getActiveSensorCount());
+        assertEquals(ArmingStatus.ARMED_AWAY, restarted.getArmingStatus());
+        assertEquals(AlarmStatus.PENDING_ALARM, restarted.getAlarmStatus());
+    }
+
+    @Test
+    public void renamedSensor_replacedByIdOnReplay() {
+        JournalSecurityRepositoryImpl repository = open();
+        Sensor sensor = new Sensor("Garage", SensorType.DOOR);
+        repository.addSensor(sensor);
+        sensor.setName("Back Door");
+        repository.updateSensor(sensor);
+        opened.add(repository);
+
+        JournalSecurityRepositoryImpl restarted = reopenAfterCrash();
+        assertEquals(1, restarted.getSensors().size());
+        assertEquals("Back Door", restarted.getSensor(sensor.getSensorId()).getName());
+    }
+
+    @Test
+    public void resetRecord_deactivatesEverySensorOnReplay() {
+        JournalSecurityRepositoryImpl repository = open();
+        for (int i = 0; i < 3; i++) {
+            Sensor sensor = new Sensor("Sensor " + i, SensorType.MOTION);
+            sensor.setActive(true);
+            repository.addSensor(sensor);
+        }
+        repository.resetAllSensors();
+        opened.add(repository);
+
+        JournalSecurityRepositoryImpl restarted = reopenAfterCrash();
+        assertEquals(3, restarted.getSensors().size());
+        assertEquals(0, restarted.getActiveSensorCount());
+    }
+
+    // The crash cut the last record short; the record written after restarting must survive the next restart
+    @Test
+    public void tornLastRecord_skippedAndCutOff_laterRecordsSurvive() throws IOException {
+        JournalSecurityRepositoryImpl repository = open();
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        repository.addSensor(door);
+        opened.add(repository);
+        long intact = Files.size(journalPath);
+        Files.writeString(journalPath, "UPDATE\t{\"sensorId\":\"" + door.getSensorId(), StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+
+        JournalSecurityRepositoryImpl restarted = reopenAfterCrash();
+        assertEquals(Set.of(door), restarted.getSensors());
+        assertEquals(intact, Files.size(journalPath));
+
+        Sensor window = new Sensor("Kitchen Window", SensorType.WINDOW);
+        restarted.addSensor(window);
+        JournalSecurityRepositoryImpl restartedAgain = reopenAfterCrash();
+        assertEquals(Set.of(door, window), restartedAgain.getSensors());
+    }
+
+    @Test
+    public void corruptCompleteRecord_skipped() throws IOException {
+        JournalSecurityRepositoryImpl repository = open();
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        repository.addSensor(door);
+        opened.add(repository);
+        Files.writeString(journalPath, "garbage\nUPDATE\t{not json\nALARM\tNOT_A_STATUS\nARMING\tARMED_HOME\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        JournalSecurityRepositoryImpl restarted = reopenAfterCrash();
+        assertEquals(Set.of(door), restarted.getSensors());
+        assertEquals(AlarmStatus.NO_ALARM, restarted.getAlarmStatus());
+        assertEquals(ArmingStatus.ARMED_HOME, restarted.getArmingStatus());
+    }
+
+    @Test
+    public void compact_snapshotWrittenAndJournalEmptied_restartLoadsBoth() throws IOException {
+        JournalSecurityRepositoryImpl repository = open();
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        repository.addSensor(door);
+        repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        repository.compact();
+        assertEquals(0, Files.size(journalPath));
+        assertTrue(Files.exists(snapshotPath));
+        assertFalse(Files.exists(tempDir.resolve("security.journal.snapshot.tmp")));
+
+        Sensor window = new Sensor("Kitchen Window", SensorType.WINDOW);
+        repository.addSensor(window);
+        opened.add(repository);
+
+        JournalSecurityRepositoryImpl restarted = reopenAfterCrash();
+        assertEquals(Set.of(door, window), restarted.getSensors());
+        assertEquals(ArmingStatus.ARMED_HOME, restarted.getArmingStatus());
+
+        //replaces the snapshot this instance loaded at startup
+        restarted.removeSensor(door);
+        restarted.compact();
+        assertEquals(Set.of(window), reopenAfterCrash().getSensors());
+    }
+
+    @Test
+    public void close_compactsSoRestartOnlyReadsSnapshot() throws IOException {
+        JournalSecurityRepositoryImpl repository = open();
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        door.setActive(true);
+        repository.addSensor(door);
+        repository.close();
+        assertEquals(0, Files.size(journalPath));
+
+        JournalSecurityRepositoryImpl restarted = reopenAfterCrash();
+        assertEquals(Set.of(door), restarted.getSensors());
+        assertEquals(1, restarted.getActiveSensorCount());
+    }
+
+    @Test
+    public void compactor_compactsOnceThresholdReached() throws Exception {
+        JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(journalPath, Duration.ofMillis(10), 3);
+        opened.add(repository);
+        for (int i = 0; i < 3; i++) {
+            repository.addSensor(new Sensor("Sensor " + i, SensorType.MOTION));
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (Files.size(journalPath) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, Files.size(journalPath));
+        assertEquals(3, SensorSnapshotFile.read(snapshotPath).size());
+    }
+}
@@ -0,0 +1,104 @@
+package com.udacity.catpoint.security.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Unit tests for PretendDatabaseSecurityRepositoryImpl against a throwaway preferences node,
+ * including the one-way migration of sensors saved under the legacy single SENSORS key.
+ */
+public class PretendDatabaseSecurityRepositoryImplTest {
+
+    private Preferences prefs;
+
+    @BeforeEach
+    void setUp() {
+        prefs = Preferences.userRoot().node("catpoint-test-" + UUID.randomUUID());
+    }
+
+    @AfterEach
+    void tearDown() throws BackingStoreException {
+        prefs.removeNode();
+    }
+
+    private static Sensor sensor(String name, SensorType type, boolean active) {
+        Sensor sensor = new Sensor(name, type);
+        sensor.setActive(active);
+        return sensor;
+    }
+
+    /**
+     * Sensors as older versions stored them under the single SENSORS key: the output of a plain
+     * {@code new Gson().toJson(...)} of four sensors, from when Gson serialized Sensor reflectively.
+     */
+    static String legacySensorsJson() throws IOException {
+        try (InputStream in = PretendDatabaseSecurityRepositoryImplTest.class.getResourceAsStream("legacy-sensors.json")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).strip();
+        }
+    }
+
+    @Test
+    public void legacySensors_migratedToOneKeyEach_onlyOnce() throws Exception {
+        UUID frontDoor = UUID.fromString("0b7a5c1e-3f1c-4b5e-9a53-2d5f6c7e8f90");
+        UUID hallway = UUID.fromString("6f1e2d3c-4b5a-4968-8776-655443322110");
+        prefs.put("SENSORS", legacySensorsJson());
+        prefs.put("ARMING_STATUS", ArmingStatus.ARMED_HOME.toString());
+
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(prefs);
+        assertEquals(4, repository.getSensors().size());
+        assertEquals("Front Door", repository.getSensor(frontDoor).getName());
+        assertEquals(SensorType.DOOR, repository.getSensor(frontDoor).getSensorType());
+        assertEquals("Hallway é猫", repository.getSensor(hallway).getName());
+        assertEquals(1, repository.getActiveSensorCount());
+        assertEquals(2, repository.getSensors(SensorType.MOTION).size());
+        assertEquals(ArmingStatus.ARMED_HOME, repository.getArmingStatus());
+        assertNull(prefs.get("SENSORS", null));
+        Preferences sensorPrefs = prefs.node("sensors");
+        assertEquals(4, sensorPrefs.keys().length);
+        String storedDoor = sensorPrefs.get(frontDoor.toString(), null);
+        assertNotNull(storedDoor);
+
+        //a second start finds nothing to migrate and loads the per-sensor keys as they are
+        PretendDatabaseSecurityRepositoryImpl restarted = new PretendDatabaseSecurityRepositoryImpl(prefs);
+        assertEquals(repository.getSensors(), restarted.getSensors());
+        assertTrue(restarted.getSensor(frontDoor).getActive());
+        assertEquals(4, sensorPrefs.keys().length);
+        assertEquals(storedDoor, sensorPrefs.get(frontDoor.toString(), null));
+    }
+
+    @Test
+    public void changes_survivedRestart() {
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(prefs);
+        Sensor door = sensor("Front Door", SensorType.DOOR, false);
+        Sensor motion = sensor("Hallway", SensorType.MOTION, true);
+        Sensor window = sensor("Kitchen Window", SensorType.WINDOW, true);
+        repository.addSensor(door);
+        repository.addSensor(motion);
+        repository.addSensor(window);
+        repository.removeSensor(door);
+        repository.resetAllSensors();
+        window.setActive(true);
+        repository.updateSensor(window);
+        repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+
+        PretendDatabaseSecurityRepositoryImpl restarted = new PretendDatabaseSecurityRepositoryImpl(prefs);
+        assertEquals(Set.of(motion, window), restarted.getSensors());
+        assertEquals(List.of(window), List.copyOf(restarted.getActiveSensors(SensorType.WINDOW)));
+        assertEquals(1, restarted.getActiveSensorCount());
+        assertEquals(AlarmStatus.PENDING_ALARM, restarted.getAlarmStatus());
+        assertEquals(ArmingStatus.DISARMED, restarted.getArmingStatus());
+    }
+}
@@ -0,0 +1,188 @@
+package com.udacity.catpoint.security.data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Unit tests for SensorIndex: sensors changed before they are put again move between the type
+ * and active indexes, and after every change the views agree with each other.
+ */
+public class SensorIndexTest {
+
+    private SensorIndex index;
+    private Sensor door;
+    private Sensor window;
+    private Sensor motion;
+
+    @BeforeEach
+    void init() {
+        index = new SensorIndex();
+        door = new Sensor("Front Door", SensorType.DOOR);
+        window = new Sensor("Kitchen Window", SensorType.WINDOW);
+        motion = new Sensor("Hallway", SensorType.MOTION);
+    }
+
+    //every secondary index is the primary index filtered by type and activation
+    private void assertConsistent() {
+        Set<Sensor> allOfTypes = new HashSet<>();
+        Set<Sensor> activeOfTypes = new HashSet<>();
+        for (SensorType type : SensorType.values()) {
+            for (Sensor sensor : index.ofType(type)) {
+                assertEquals(type, sensor.getSensorType());
+                assertTrue(allOfTypes.add(sensor), sensor + " indexed under two types");
+            }
+            for (Sensor sensor : index.activeOfType(type)) {
+                assertEquals(type, sensor.getSensorType());
+                assertTrue(sensor.getActive());
+                assertTrue(index.ofType(type).contains(sensor));
+                activeOfTypes.add(sensor);
+            }
+        }
+        assertEquals(new HashSet<>(index.all()), allOfTypes);
+        assertEquals(index.all().size(), allOfTypes.size());
+        assertEquals(index.active(), activeOfTypes);
+        assertEquals(index.active().size(), index.activeCount());
+        for (Sensor sensor : index.all()) {
+            assertSame(sensor, index.get(sensor.getSensorId()));
+            assertEquals(sensor.getActive(), index.active().contains(sensor));
+        }
+    }
+
+    @Test
+    public void put_indexedByIdTypeAndActivation() {
+        motion.setActive(true);
+        index.put(door);
+        index.put(window);
+        index.put(motion);
+
+        assertEquals(Set.of(door, window, motion), index.all());
+        assertSame(door, index.get(door.getSensorId()));
+        assertEquals(Set.of(window), index.ofType(SensorType.WINDOW));
+        assertEquals(Set.of(motion), index.activeOfType(SensorType.MOTION));
+        assertEquals(Set.of(), index.activeOfType(SensorType.DOOR));
+        assertEquals(Set.of(motion), index.active());
+        assertConsistent();
+    }
+
+    // A copy with the same id, as replay produces, replaces the indexed instance everywhere
+    @Test
+    public void putSameId_replacesEntry() {
+        index.put(door);
+        Sensor copy = new Sensor("Back Door", SensorType.WINDOW);
+        copy.setSensorId(door.getSensorId());
+        copy.setActive(true);
+        index.put(copy);
+
+        assertEquals(1, index.all().size());
+        assertSame(copy, index.get(door.getSensorId()));
+        assertSame(copy, index.ofType(SensorType.WINDOW).iterator().next());
+        assertEquals(Set.of(), index.ofType(SensorType.DOOR));
+        assertEquals(Set.of(copy), index.activeOfType(SensorType.WINDOW));
+        assertConsistent();
+    }
+
+    // The sensor is changed in place before the index hears about it
+    @Test
+    public void typeChanged_movedToNewTypeIndexes() {
+        door.setActive(true);
+        index.put(door);
+        door.setSensorType(SensorType.MOTION);
+        index.put(door);
+
+        assertEquals(Set.of(), index.ofType(SensorType.DOOR));
+        assertEquals(Set.of(), index.activeOfType(SensorType.DOOR));
+        assertEquals(Set.of(door), index.ofType(SensorType.MOTION));
+        assertEquals(Set.of(door), index.activeOfType(SensorType.MOTION));
+        assertConsistent();
+    }
+
+    @Test
+    public void activationChanged_movedInAndOutOfActiveIndexes() {
+        index.put(door);
+        index.put(window);
+        door.setActive(true);
+        index.put(door);
+        assertEquals(1, index.activeCount());
+        assertEquals(Set.of(door), index.activeOfType(SensorType.DOOR));
+        assertConsistent();
+
+        door.setActive(false);
+        index.put(door);
+        assertEquals(0, index.activeCount());
+        assertEquals(Set.of(), index.activeOfType(SensorType.DOOR));
+        assertEquals(Set.of(door), index.ofType(SensorType.DOOR));
+        assertConsistent();
+    }
+
+    // Removed under its old type and activation, even though it changed since it was put
+    @Test
+    public void remove_goneFromEveryIndex() {
+        window.setActive(true);
+        index.put(door);
+        index.put(window);
+        window.setActive(false);
+        window.setSensorType(SensorType.DOOR);
+        index.remove(window);
+
+        assertNull(index.get(window.getSensorId()));
+        assertEquals(Set.of(door), index.all());
+        assertFalse(index.all().contains(window));
+        assertEquals(Set.of(), index.ofType(SensorType.WINDOW));
+        assertEquals(Set.of(), index.activeOfType(SensorType.WINDOW));
+        assertEquals(0, index.activeCount());
+        assertConsistent();
+
+        //removing an absent sensor is a no-op
+        index.remove(motion);
+        assertEquals(Set.of(door), index.all());
+        assertConsistent();
+    }
+
+    @Test
+    public void deactivateAll_onlyActiveSensorsTouched() {
+        door.setActive(true);
+        motion.setActive(true);
+        index.put(door);
+        index.put(window);
+        index.put(motion);
+
+        List<Sensor> deactivated = index.deactivateAll();
+        assertEquals(Set.of(door, motion), new HashSet<>(deactivated));
+        assertFalse(door.getActive());
+        assertFalse(motion.getActive());
+        assertEquals(0, index.activeCount());
+        for (SensorType type : SensorType.values()) {
+            assertEquals(Set.of(), index.activeOfType(type));
+        }
+        assertEquals(Set.of(door, window, motion), index.all());
+        assertConsistent();
+
+        assertEquals(List.of(), index.deactivateAll());
+    }
+
+    @Test
+    public void views_liveAndReadOnly() {
+        Set<Sensor> all = index.all();
+        Set<Sensor> active = index.active();
+        Set<Sensor> doors = index.ofType(SensorType.DOOR);
+        door.setActive(true);
+        index.put(door);
+
+        assertEquals(Set.of(door), all);
+        assertEquals(Set.of(door), active);
+        assertEquals(Set.of(door), doors);
+        assertThrows(UnsupportedOperationException.class, () -> all.add(window));
+        assertThrows(UnsupportedOperationException.class, () -> all.iterator().remove());
+        assertThrows(UnsupportedOperationException.class, () -> active.remove(door));
+        assertThrows(UnsupportedOperationException.class, () -> doors.clear());
+        assertThrows(UnsupportedOperationException.class, () -> index.activeOfType(SensorType.DOOR).add(window));
+        assertConsistent();
+    }
+}
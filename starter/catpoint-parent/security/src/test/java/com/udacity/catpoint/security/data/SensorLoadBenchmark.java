@@ -0,0 +1,57 @@
+package com.udacity.catpoint.security.data;
+
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of turning the stored sensor JSON into the repository's sensor set: the original
+ * reflective TypeToken path against the streaming SensorTypeAdapter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorLoadBenchmark {
+
+    @Param({"100", "10000"})
+    private int sensorCount;
+
+    private String json;
+    private final SensorTypeAdapter adapter = new SensorTypeAdapter();
+
+    @Setup
+    public void setUp() {
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < sensorCount; i++) {
+            sensors.add(new Sensor("Sensor " + i, SensorType.values()[i % SensorType.values().length]));
+        }
+        json = SensorTypeAdapter.createGson().toJson(sensors);
+    }
+
+    @Benchmark
+    public Set<Sensor> reflectiveTypeToken() {
+        //a fresh Gson each time, as the constructor of the original repository paid for one too
+        Type type = new TypeToken<Set<Sensor>>() {
+        }.getType();
+        return new TreeSet<>(new Gson().<Set<Sensor>>fromJson(json, type));
+    }
+
+    @Benchmark
+    public Set<Sensor> streamingAdapter() throws IOException {
+        Set<Sensor> sensors = new TreeSet<>();
+        adapter.readAll(new StringReader(json), sensors::add);
+        return sensors;
+    }
+}
@@ -0,0 +1,148 @@
+package com.udacity.catpoint.security.data;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Unit test for SensorSnapshotFile.
+ */
+public class SensorSnapshotFileTest {
+
+    private static final Gson gson = SensorTypeAdapter.createGson();
+
+    @TempDir
+    Path tempDir;
+
+    private Path snapshot;
+
+    @BeforeEach
+    void setUp() {
+        snapshot = tempDir.resolve("sensors.snapshot");
+    }
+
+    private Set<Sensor> sampleSensors() {
+        Set<Sensor> sensors = new TreeSet<>();
+        Sensor frontDoor = new Sensor("Front Door", SensorType.DOOR);
+        frontDoor.setActive(true);
+        sensors.add(frontDoor);
+        sensors.add(new Sensor("Kitchen Window", SensorType.WINDOW));
+        sensors.add(new Sensor("Hallway é猫", SensorType.MOTION));
+        sensors.add(new Sensor("Kitchen Window", SensorType.MOTION));
+        return sensors;
+    }
+
+    // Sensors written by the old reflective Gson load, and encode back to the same JSON after a trip
+    // through the binary format
+    @Test
+    public void gsonSensors_writtenAndReadBack_serializeToIdenticalJson() throws IOException {
+        String legacyJson = PretendDatabaseSecurityRepositoryImplTest.legacySensorsJson();
+        List<Sensor> fromGson = new ArrayList<>();
+        new SensorTypeAdapter().readAll(new StringReader(legacyJson), fromGson::add);
+        assertEquals(4, fromGson.size());
+
+        SensorSnapshotFile.write(snapshot, AlarmStatus.PENDING_ALARM, ArmingStatus.ARMED_AWAY, fromGson);
+        List<Sensor> fromBinary = SensorSnapshotFile.open(snapshot).getSensors();
+
+        assertEquals(legacyJson, gson.toJson(fromBinary));
+    }
+
+    @Test
+    public void snapshotWritten_statusesReadBack() throws IOException {
+        SensorSnapshotFile.write(snapshot, AlarmStatus.ALARM, ArmingStatus.ARMED_HOME, sampleSensors());
+        SensorSnapshotFile.Reader reader = SensorSnapshotFile.open(snapshot);
+        assertEquals(AlarmStatus.ALARM, reader.getAlarmStatus());
+        assertEquals(ArmingStatus.ARMED_HOME, reader.getArmingStatus());
+        assertEquals(4, reader.size());
+    }
+
+    // Records are fixed width and repeated names are only stored once
+    @Test
+    public void duplicateNames_storedOnceInNameTable() throws IOException {
+        Set<Sensor> sensors = sampleSensors();
+        SensorSnapshotFile.write(snapshot, AlarmStatus.NO_ALARM, ArmingStatus.DISARMED, sensors);
+        long expectedSize = SensorSnapshotFile.HEADER_BYTES
+                + (long) sensors.size() * SensorSnapshotFile.RECORD_BYTES
+                + sensors.stream().map(Sensor::getName).distinct()
+                        .mapToInt(n -> Integer.BYTES + n.getBytes(StandardCharsets.UTF_8).length).sum();
+        assertEquals(expectedSize, Files.size(snapshot));
+    }
+
+    // Sensors created through the GSON constructor may be missing fields
+    @Test
+    public void sensorWithNullFields_roundTripsAsNullsAndInactive() throws IOException {
+        Sensor sensor = new Sensor();
+        sensor.setSensorId(UUID.randomUUID());
+        SensorSnapshotFile.write(snapshot, AlarmStatus.NO_ALARM, ArmingStatus.DISARMED, List.of(sensor));
+        Sensor read = SensorSnapshotFile.open(snapshot).getSensor(0);
+        assertEquals(sensor.getSensorId(), read.getSensorId());
+        assertNull(read.getName());
+        assertNull(read.getSensorType());
+        assertFalse(read.getActive());
+    }
+
+    @Test
+    public void fileWithoutMagic_isRejected() throws IOException {
+        Files.writeString(snapshot, gson.toJson(sampleSensors()));
+        assertThrows(IOException.class, () -> SensorSnapshotFile.open(snapshot));
+    }
+
+    @Test
+    public void readIntoMemory_sameAsMapped() throws IOException {
+        SensorSnapshotFile.write(snapshot, AlarmStatus.ALARM, ArmingStatus.ARMED_HOME, sampleSensors());
+        assertEquals(gson.toJson(SensorSnapshotFile.open(snapshot).getSensors()), gson.toJson(SensorSnapshotFile.read(snapshot).getSensors()));
+    }
+
+    private byte[] corrupt(int position, ByteBuffer value) throws IOException {
+        SensorSnapshotFile.write(snapshot, AlarmStatus.NO_ALARM, ArmingStatus.DISARMED, sampleSensors());
+        byte[] bytes = Files.readAllBytes(snapshot);
+        value.flip().get(bytes, position, value.remaining());
+        return bytes;
+    }
+
+    private void assertRejected(byte[] bytes) throws IOException {
+        Files.write(snapshot, bytes);
+        assertThrows(IOException.class, () -> SensorSnapshotFile.open(snapshot));
+        assertThrows(IOException.class, () -> SensorSnapshotFile.read(snapshot));
+    }
+
+    // A file cut short anywhere after the header, or with counts, offsets or ordinals that point
+    // outside what is there, is rejected when opened rather than when a sensor is read
+    @Test
+    public void truncatedOrCorruptFile_rejectedOnOpen() throws IOException {
+        SensorSnapshotFile.write(snapshot, AlarmStatus.NO_ALARM, ArmingStatus.DISARMED, sampleSensors());
+        byte[] intact = Files.readAllBytes(snapshot);
+        for (int length = SensorSnapshotFile.HEADER_BYTES; length < intact.length; length++) {
+            assertRejected(Arrays.copyOf(intact, length));
+        }
+
+        int firstRecord = SensorSnapshotFile.HEADER_BYTES;
+        int firstName = firstRecord + 4 * SensorSnapshotFile.RECORD_BYTES;
+        assertRejected(corrupt(8, ByteBuffer.allocate(4).putInt(5)));                    //more sensors than records
+        assertRejected(corrupt(8, ByteBuffer.allocate(4).putInt(-1)));                   //negative sensor count
+        assertRejected(corrupt(8, ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE)));    //count overflowing int offsets
+        assertRejected(corrupt(12, ByteBuffer.allocate(4).putInt(1 << 30)));             //huge name table
+        assertRejected(corrupt(firstName, ByteBuffer.allocate(4).putInt(-2)));           //negative name length
+        assertRejected(corrupt(firstName, ByteBuffer.allocate(4).putInt(1 << 20)));      //name past the end
+        assertRejected(corrupt(firstRecord + 16, ByteBuffer.allocate(4).putInt(3)));     //name index past the table
+        assertRejected(corrupt(firstRecord + 20, ByteBuffer.allocate(1).put((byte) 9))); //unknown sensor type
+        assertRejected(corrupt(6, ByteBuffer.allocate(1).put((byte) 7)));                //unknown alarm status
+    }
+}
@@ -0,0 +1,269 @@
+package com.udacity.catpoint.security.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Unit tests for WriteBehindSecurityRepository: which writes reach the backing repository, in what
+ * order and when, and what the write counters report, in both durability modes.
+ */
+public class WriteBehindSecurityRepositoryTest {
+
+    //long enough that only explicit flushes run during a test
+    private static final Duration NEVER = Duration.ofDays(1);
+
+    // Records every write it is asked to perform, with the sensor state at the time of the write
+    private static class RecordingRepository extends InMemorySecurityRepositoryImpl {
+        private final List<String> writes = new ArrayList<>();
+
+        private static String describe(Sensor sensor) {
+            return sensor.getName() + (sensor.getActive() ? "*" : "");
+        }
+
+        @Override
+        public synchronized void addSensor(Sensor sensor) {
+            writes.add("add " + describe(sensor));
+            super.addSensor(sensor);
+        }
+
+        @Override
+        public synchronized void removeSensor(Sensor sensor) {
+            writes.add("remove " + describe(sensor));
+            super.removeSensor(sensor);
+        }
+
+        @Override
+        public synchronized void updateSensor(Sensor sensor) {
+            writes.add("update " + describe(sensor));
+            super.updateSensor(sensor);
+        }
+
+        @Override
+        public synchronized void updateSensors(Collection<Sensor> sensors) {
+            writes.add("updateAll " + sensors.stream().map(RecordingRepository::describe).collect(Collectors.joining(",")));
+            sensors.forEach(super::updateSensor);
+        }
+
+        @Override
+        public synchronized Collection<Sensor> resetAllSensors() {
+            writes.add("reset");
+            return super.resetAllSensors();
+        }
+
+        @Override
+        public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+            writes.add("alarm " + alarmStatus);
+            super.setAlarmStatus(alarmStatus);
+        }
+
+        @Override
+        public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+            writes.add("arming " + armingStatus);
+            super.setArmingStatus(armingStatus);
+        }
+
+        //takes the recorded writes, so each check only sees what happened since the last one
+        private synchronized List<String> takeWrites() {
+            List<String> taken = new ArrayList<>(writes);
+            writes.clear();
+            return taken;
+        }
+    }
+
+    private final RecordingRepository delegate = new RecordingRepository();
+    private final List<WriteBehindSecurityRepository> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() {
+        opened.forEach(WriteBehindSecurityRepository::close);
+    }
+
+    private WriteBehindSecurityRepository open(DurabilityMode mode) {
+        WriteBehindSecurityRepository repository = new WriteBehindSecurityRepository(delegate, mode, NEVER);
+        opened.add(repository);
+        return repository;
+    }
+
+    private Sensor existingSensor(String name, boolean active) {
+        Sensor sensor = new Sensor(name, SensorType.DOOR);
+        sensor.setActive(active);
+        delegate.addSensor(sensor);
+        delegate.takeWrites();
+        return sensor;
+    }
+
+    @Test
+    public void sync_everyWritePassedThroughInOrder() {
+        Sensor door = existingSensor("door", false);
+        WriteBehindSecurityRepository repository = open(DurabilityMode.SYNC);
+        assertEquals(DurabilityMode.SYNC, repository.getDurabilityMode());
+        assertNull(repository.getShutdownHook());
+
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        repository.addSensor(window);
+        door.setActive(true);
+        repository.updateSensor(door);
+        repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        repository.resetAllSensors();
+        repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        repository.removeSensor(window);
+
+        assertEquals(List.of("add window", "update door*", "arming ARMED_HOME", "reset", "alarm PENDING_ALARM", "remove window"),
+                delegate.takeWrites());
+        assertEquals(6, repository.getWritesRequested());
+        assertEquals(6, repository.getWritesPerformed());
+        assertEquals(0, repository.getWritesSaved());
+        repository.flush();
+        assertEquals(List.of(), delegate.takeWrites());
+    }
+
+    @Test
+    public void coalesced_nothingWrittenUntilFlush_thenLatestChangePerSensor() {
+        Sensor door = existingSensor("door", false);
+        Sensor garage = existingSensor("garage", false);
+        WriteBehindSecurityRepository repository = open(DurabilityMode.COALESCED);
+
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        repository.addSensor(window);
+        window.setActive(true);
+        repository.updateSensor(window);
+        door.setActive(true);
+        repository.updateSensor(door);
+        door.setActive(false);
+        repository.updateSensor(door);
+        repository.removeSensor(garage);
+        repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        repository.setAlarmStatus(AlarmStatus.ALARM);
+        repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+
+        assertEquals(List.of(), delegate.takeWrites());
+        assertTrue(repository.getSensor(window.getSensorId()).getActive());
+        assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+
+        repository.flush();
+        //additions and removals one by one in the order first changed, then updates as one batch
+        assertEquals(List.of("add window*", "remove garage", "updateAll door", "alarm ALARM", "arming ARMED_AWAY"),
+                delegate.takeWrites());
+        assertEquals(8, repository.getWritesRequested());
+        assertEquals(5, repository.getWritesPerformed());
+        assertEquals(3, repository.getWritesSaved());
+
+        repository.flush();
+        assertEquals(List.of(), delegate.takeWrites());
+    }
+
+    @Test
+    public void coalesced_addedThenRemoved_neverWritten_removedThenAdded_updated() {
+        Sensor door = existingSensor("door", false);
+        WriteBehindSecurityRepository repository = open(DurabilityMode.COALESCED);
+
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        repository.addSensor(window);
+        repository.removeSensor(window);
+        repository.removeSensor(door);
+        door.setName("front door");
+        repository.addSensor(door);
+        repository.flush();
+
+        assertEquals(List.of("updateAll front door"), delegate.takeWrites());
+        assertEquals(4, repository.getWritesRequested());
+        assertEquals(1, repository.getWritesPerformed());
+    }
+
+    // A reset is flushed as updates of the sensors it deactivated, so one activated again since stays active
+    @Test
+    public void coalesced_resetFlushedAsUpdates() {
+        Sensor door = existingSensor("door", true);
+        Sensor window = existingSensor("window", true);
+        existingSensor("garage", false);
+        WriteBehindSecurityRepository repository = open(DurabilityMode.COALESCED);
+
+        repository.resetAllSensors();
+        window.setActive(true);
+        repository.updateSensor(window);
+        repository.flush();
+
+        List<String> writes = delegate.takeWrites();
+        assertEquals(1, writes.size());
+        assertTrue(writes.get(0).matches("updateAll (door,window\\*|window\\*,door)"), writes.get(0));
+        assertFalse(delegate.getSensor(door.getSensorId()).getActive());
+        assertEquals(1, delegate.getActiveSensorCount());
+    }
+
+    @Test
+    public void close_flushesPendingAndRemovesShutdownHook() {
+        WriteBehindSecurityRepository repository = new WriteBehindSecurityRepository(delegate, DurabilityMode.COALESCED, NEVER);
+        repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        Thread hook = repository.getShutdownHook();
+        repository.close();
+
+        assertEquals(List.of("arming ARMED_HOME"), delegate.takeWrites());
+        assertFalse(Runtime.getRuntime().removeShutdownHook(hook), "close should remove the shutdown hook");
+    }
+
+    @Test
+    public void shutdownHook_flushesPending() {
+        WriteBehindSecurityRepository repository = open(DurabilityMode.COALESCED);
+        repository.setAlarmStatus(AlarmStatus.ALARM);
+        Thread hook = repository.getShutdownHook();
+        assertTrue(Runtime.getRuntime().removeShutdownHook(hook), "hook should be registered while open");
+
+        hook.run();
+        assertEquals(List.of("alarm ALARM"), delegate.takeWrites());
+    }
+
+    @Test
+    public void coalesced_backgroundFlush() throws InterruptedException {
+        WriteBehindSecurityRepository repository = new WriteBehindSecurityRepository(delegate, DurabilityMode.COALESCED,
+                Duration.ofMillis(10));
+        opened.add(repository);
+        repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (delegate.getArmingStatus() != ArmingStatus.ARMED_AWAY && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("arming ARMED_AWAY"), delegate.takeWrites());
+    }
+
+    // The backing store fails once mid-flush; the background flush must keep running and retry
+    // only what the store did not take
+    @Test
+    public void coalesced_failedBackgroundFlush_retriedOnNextRun() throws InterruptedException {
+        RecordingRepository failingOnce = new RecordingRepository() {
+            private boolean failed;
+
+            @Override
+            public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("backing store unavailable");
+                }
+                super.setArmingStatus(armingStatus);
+            }
+        };
+        WriteBehindSecurityRepository repository = new WriteBehindSecurityRepository(failingOnce, DurabilityMode.COALESCED,
+                Duration.ofMillis(10));
+        opened.add(repository);
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        repository.addSensor(window);
+        repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (failingOnce.getArmingStatus() != ArmingStatus.ARMED_AWAY && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("add window", "alarm PENDING_ALARM", "arming ARMED_AWAY"), failingOnce.takeWrites());
+        assertEquals(1, repository.getFlushFailures());
+        assertEquals(3, repository.getWritesPerformed());
+    }
+}
@@ -0,0 +1,244 @@
+package com.udacity.catpoint.security.ingest;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.*;
+import com.udacity.catpoint.security.service.SecurityEventLoop;
+import com.udacity.catpoint.security.service.SecurityService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+
+/**
+ * Tests for the binary sensor event frame codec, including a fuzz test of malformed input, and
+ * for BinarySensorEventServer over a real socket.
+ */
+public class BinarySensorEventServerTest {
+
+    private static final int FUZZ_ROUNDS = 2_000;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private InMemorySecurityRepositoryImpl repository;
+    private SecurityEventLoop eventLoop;
+    private BinarySensorEventServer server;
+    private final List<Sensor> sensors = new ArrayList<>();
+
+    // One frame as the handler received it
+    private static class Decoded {
+        private final UUID sensorId;
+        private final boolean active;
+        private final long timestamp;
+
+        private Decoded(UUID sensorId, boolean active, long timestamp) {
+            this.sensorId = sensorId;
+            this.active = active;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Decoded)) {
+                return false;
+            }
+            Decoded other = (Decoded) o;
+            return sensorId.equals(other.sensorId) && active == other.active && timestamp == other.timestamp;
+        }
+
+        @Override
+        public int hashCode() {
+            return sensorId.hashCode();
+        }
+    }
+
+    @BeforeEach
+    void init() throws IOException {
+        repository = new InMemorySecurityRepositoryImpl();
+        for (int i = 0; i < 4; i++) {
+            Sensor sensor = new Sensor("Sensor " + i, SensorType.WINDOW);
+            repository.addSensor(sensor);
+            sensors.add(sensor);
+        }
+        repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        eventLoop = new SecurityEventLoop(new SecurityService(repository, mock(ImageService.class)));
+        server = new BinarySensorEventServer(eventLoop, new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        server.close();
+        eventLoop.close();
+    }
+
+    private static List<Decoded> decodeAll(ByteBuffer buffer) throws ProtocolException {
+        List<Decoded> decoded = new ArrayList<>();
+        SensorEventFrame.decode(buffer, (most, least, active, timestamp) -> decoded.add(new Decoded(new UUID(most, least), active, timestamp)));
+        return decoded;
+    }
+
+    private static List<Decoded> randomFrames(Random random, int count) {
+        List<Decoded> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            frames.add(new Decoded(new UUID(random.nextLong(), random.nextLong()), random.nextBoolean(), random.nextLong()));
+        }
+        return frames;
+    }
+
+    private static ByteBuffer encode(List<Decoded> frames) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(frames.size() * SensorEventFrame.FRAME_BYTES);
+        frames.forEach(frame -> SensorEventFrame.encode(buffer, frame.sensorId, frame.active, frame.timestamp));
+        return buffer.flip();
+    }
+
+    private void awaitFrames(long frames) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (server.getFramesReceived() < frames && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        eventLoop.awaitProcessed();
+    }
+
+    @Test
+    public void frames_roundTripAndPartialFrameKept() throws ProtocolException {
+        List<Decoded> frames = randomFrames(new Random(1), 3);
+        ByteBuffer encoded = encode(frames);
+        ByteBuffer truncated = encoded.duplicate().limit(encoded.limit() - 1);
+
+        assertEquals(frames.subList(0, 2), decodeAll(truncated));
+        assertEquals(2 * SensorEventFrame.FRAME_BYTES, truncated.position());
+        assertEquals(frames, decodeAll(encoded));
+        assertFalse(encoded.hasRemaining());
+    }
+
+    @Test
+    public void unknownAction_rejectedAfterEarlierFrames() {
+        ByteBuffer buffer = encode(randomFrames(new Random(2), 3));
+        buffer.put(SensorEventFrame.FRAME_BYTES + 16, (byte) 7);
+        List<Decoded> decoded = new ArrayList<>();
+        assertThrows(ProtocolException.class, () -> SensorEventFrame.decode(buffer,
+                (most, least, active, timestamp) -> decoded.add(new Decoded(new UUID(most, least), active, timestamp))));
+        assertEquals(1, decoded.size());
+        assertEquals(SensorEventFrame.FRAME_BYTES, buffer.position());
+    }
+
+    // A valid stream cut into random chunks, the way reads deliver it, decodes to the same frames.
+    // Random garbage either decodes or fails with ProtocolException, never anything else, and every
+    // byte consumed belongs to a whole frame.
+    @Test
+    public void fuzz_chunkedAndMalformedInput() {
+        Random random = new Random(42);
+        for (int round = 0; round < FUZZ_ROUNDS; round++) {
+            List<Decoded> frames = randomFrames(random, 1 + random.nextInt(20));
+            ByteBuffer stream = encode(frames);
+            if (round % 2 == 1) {
+                //corrupt a few bytes anywhere, including action bytes
+                for (int i = random.nextInt(4); i >= 0; i--) {
+                    stream.put(random.nextInt(stream.limit()), (byte) random.nextInt(256));
+                }
+            }
+
+            ByteBuffer connection = ByteBuffer.allocateDirect(64);
+            List<Decoded> decoded = new ArrayList<>();
+            int consumed = 0;
+            try {
+                while (stream.hasRemaining()) {
+                    int chunk = Math.min(stream.remaining(), Math.min(connection.remaining(), 1 + random.nextInt(40)));
+                    ByteBuffer slice = stream.slice().limit(chunk);
+                    connection.put(slice);
+                    stream.position(stream.position() + chunk);
+                    connection.flip();
+                    int before = connection.position();
+                    int count = SensorEventFrame.decode(connection,
+                            (most, least, active, timestamp) -> decoded.add(new Decoded(new UUID(most, least), active, timestamp)));
+                    assertEquals(count * SensorEventFrame.FRAME_BYTES, connection.position() - before);
+                    consumed += connection.position() - before;
+                    connection.compact();
+                }
+                assertEquals(frames.size() * SensorEventFrame.FRAME_BYTES, consumed);
+                if (round % 2 == 0) {
+                    assertEquals(frames, decoded);
+                }
+            } catch (ProtocolException e) {
+                assertEquals(1, round % 2, "valid stream rejected");
+            }
+        }
+    }
+
+    @Test
+    public void stream_appliedToExistingSensors() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(5 * SensorEventFrame.FRAME_BYTES);
+        SensorEventFrame.encode(buffer, sensors.get(0).getSensorId(), true, 1);
+        SensorEventFrame.encode(buffer, sensors.get(1).getSensorId(), true, 2);
+        SensorEventFrame.encode(buffer, UUID.randomUUID(), true, 3);
+        SensorEventFrame.encode(buffer, sensors.get(0).getSensorId(), false, 4);
+        SensorEventFrame.encode(buffer, sensors.get(2).getSensorId(), false, 5);
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            //split mid-frame, so the server has to keep the partial frame between reads
+            out.write(buffer.array(), 0, 40);
+            out.flush();
+            Thread.sleep(20);
+            out.write(buffer.array(), 40, buffer.position() - 40);
+            out.flush();
+            awaitFrames(5);
+        }
+
+        assertEquals(5, server.getFramesReceived());
+        assertEquals(1, server.getUnknownSensors());
+        assertFalse(sensors.get(0).getActive());
+        assertTrue(sensors.get(1).getActive());
+        assertEquals(1, repository.getActiveSensorCount());
+        assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+    }
+
+    @Test
+    public void malformedStream_connectionDroppedOthersServed() throws Exception {
+        ByteBuffer bad = ByteBuffer.allocate(2 * SensorEventFrame.FRAME_BYTES);
+        SensorEventFrame.encode(bad, sensors.get(0).getSensorId(), true, 1);
+        bad.put(new byte[SensorEventFrame.FRAME_BYTES]);
+        bad.put(SensorEventFrame.FRAME_BYTES + 16, (byte) -1);
+        try (Socket badSocket = new Socket("127.0.0.1", server.getPort());
+             Socket goodSocket = new Socket("127.0.0.1", server.getPort())) {
+            badSocket.getOutputStream().write(bad.array());
+            assertEquals(-1, badSocket.getInputStream().read(), "server should close the connection");
+
+            ByteBuffer good = ByteBuffer.allocate(SensorEventFrame.FRAME_BYTES);
+            SensorEventFrame.encode(good, sensors.get(3).getSensorId(), true, 2);
+            goodSocket.getOutputStream().write(good.array());
+            awaitFrames(2);
+        }
+
+        assertEquals(1, server.getMalformedConnections());
+        assertTrue(sensors.get(0).getActive());
+        assertTrue(sensors.get(3).getActive());
+    }
+
+    // Every batch is refused once the event loop is closed; the selector thread must survive that
+    @Test
+    public void eventLoopClosed_batchDroppedAndConnectionClosed_serverKeepsServing() throws Exception {
+        eventLoop.close();
+        ByteBuffer frame = ByteBuffer.allocate(SensorEventFrame.FRAME_BYTES);
+        SensorEventFrame.encode(frame, sensors.get(0).getSensorId(), true, 1);
+        for (int connection = 1; connection <= 2; connection++) {
+            try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+                socket.getOutputStream().write(frame.array());
+                assertEquals(-1, socket.getInputStream().read(), "server should close the connection");
+            }
+            assertEquals(connection, server.getRejectedBatches());
+        }
+        assertFalse(sensors.get(0).getActive());
+    }
+}
@@ -0,0 +1,62 @@
+package com.udacity.catpoint.security.ingest;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per sensor event of decoding a burst of binary frames out of a direct buffer, against
+ * parsing the same events from lines of the text protocol the way SensorEventServer does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorEventFrameBenchmark {
+
+    private static final int FRAMES = 1024;
+
+    private ByteBuffer frames;
+    private String[] lines;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        frames = ByteBuffer.allocateDirect(FRAMES * SensorEventFrame.FRAME_BYTES);
+        lines = new String[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            UUID sensorId = new UUID(random.nextLong(), random.nextLong());
+            boolean active = random.nextBoolean();
+            SensorEventFrame.encode(frames, sensorId, active, System.currentTimeMillis());
+            lines[i] = (active ? SensorEventServer.ACTIVATE : SensorEventServer.DEACTIVATE) + " " + sensorId;
+        }
+        frames.flip();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int binaryFrames(Blackhole blackhole) throws ProtocolException {
+        ByteBuffer buffer = frames.duplicate();
+        return SensorEventFrame.decode(buffer, (mostSigBits, leastSigBits, active, timestamp) -> {
+            blackhole.consume(mostSigBits ^ leastSigBits);
+            blackhole.consume(active);
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void textLines(Blackhole blackhole) {
+        for (String line : lines) {
+            int split = line.indexOf(' ');
+            blackhole.consume(line.substring(0, split).equals(SensorEventServer.ACTIVATE));
+            blackhole.consume(UUID.fromString(line.substring(split + 1)));
+        }
+    }
+}
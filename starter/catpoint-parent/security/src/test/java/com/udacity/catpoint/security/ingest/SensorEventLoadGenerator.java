@@ -0,0 +1,208 @@
+package com.udacity.catpoint.security.ingest;
+
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.InMemorySecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.service.SecurityEventLoop;
+import com.udacity.catpoint.security.service.SecurityService;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator for {@link SensorEventServer}. Opens many gateway connections at once, then has
+ * every connection send alternating ACTIVATE and DEACTIVATE events for one sensor, waiting for each
+ * reply. It reports the event-to-alarm latency: the time from sending an event to receiving the
+ * alarm status the system settled on after applying it.
+ * <p>
+ * Usage: {@code SensorEventLoadGenerator <host:port> <connections> <eventsPerConnection> <sensorId>...},
+ * or {@code SensorEventLoadGenerator --embedded <connections> <eventsPerConnection>} to run against a
+ * server over an in-memory repository with {@value #EMBEDDED_SENSORS} sensors in the same JVM. From
+ * the project root:
+ * <pre>
+ * mvn -pl security -am -P load-test verify -Dload="--embedded 1000 100"
+ * </pre>
+ */
+public class SensorEventLoadGenerator {
+
+    static final int EMBEDDED_SENSORS = 100;
+    private static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Outcome of one run. Latencies are in microseconds.
+     */
+    public static final class Report {
+        private final int connections;
+        private final int failedConnections;
+        private final int errors;
+        private final long[] latencies;
+        private final long elapsedNanos;
+
+        private Report(int connections, int failedConnections, int errors, long[] latencies, long elapsedNanos) {
+            this.connections = connections;
+            this.failedConnections = failedConnections;
+            this.errors = errors;
+            this.latencies = latencies;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getEvents() {
+            return latencies.length;
+        }
+
+        public int getFailedConnections() {
+            return failedConnections;
+        }
+
+        /**
+         * @return Number of events answered with ERR
+         */
+        public int getErrors() {
+            return errors;
+        }
+
+        /**
+         * @param quantile Between 0 and 1, for example 0.99 for p99
+         */
+        public long percentileMicros(double quantile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+        }
+
+        public double eventsPerSecond() {
+            return latencies.length * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d connections (%d failed), %d events, %d errors, %.0f events/s, "
+                            + "latency p50 %d us, p99 %d us, max %d us",
+                    connections, failedConnections, getEvents(), errors, eventsPerSecond(),
+                    percentileMicros(0.5), percentileMicros(0.99), percentileMicros(1));
+        }
+    }
+
+    /**
+     * Connects every connection first and only starts sending once all of them are open, so the
+     * latencies are measured with the full number of connections held by the server.
+     */
+    public static Report run(InetSocketAddress address, List<UUID> sensorIds, int connections, int eventsPerConnection)
+            throws InterruptedException {
+        ExecutorService clients = SensorEventServer.newThreadPerTaskExecutor("sensor-load");
+        long[][] latencies = new long[connections][];
+        AtomicInteger failedConnections = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(connections);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(connections);
+
+        for (int c = 0; c < connections; c++) {
+            int connection = c;
+            UUID sensorId = sensorIds.get(c % sensorIds.size());
+            clients.execute(() -> {
+                boolean counted = false;
+                try (Socket socket = new Socket()) {
+                    socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                    socket.setTcpNoDelay(true);
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                    connected.countDown();
+                    counted = true;
+                    go.await();
+
+                    long[] measured = new long[eventsPerConnection];
+                    for (int i = 0; i < eventsPerConnection; i++) {
+                        String action = i % 2 == 0 ? SensorEventServer.ACTIVATE : SensorEventServer.DEACTIVATE;
+                        long sent = System.nanoTime();
+                        writer.write(action + " " + sensorId);
+                        writer.newLine();
+                        writer.flush();
+                        String reply = reader.readLine();
+                        measured[i] = (System.nanoTime() - sent) / 1_000;
+                        if (reply == null) {
+                            throw new IOException("Connection closed by server");
+                        }
+                        if (!reply.startsWith(SensorEventServer.OK)) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    latencies[connection] = measured;
+                } catch (IOException e) {
+                    failedConnections.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (!counted) {
+                        connected.countDown();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        connected.await();
+        long started = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - started;
+        clients.shutdown();
+
+        long[] all = Arrays.stream(latencies).filter(l -> l != null).flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Report(connections, failedConnections.get(), errors.get(), all, elapsed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: SensorEventLoadGenerator <host:port>|--embedded <connections> <eventsPerConnection> [sensorId...]");
+            System.exit(2);
+        }
+        int connections = Integer.parseInt(args[1]);
+        int eventsPerConnection = Integer.parseInt(args[2]);
+
+        if (args[0].equals("--embedded")) {
+            InMemorySecurityRepositoryImpl repository = new InMemorySecurityRepositoryImpl();
+            List<UUID> sensorIds = new ArrayList<>();
+            for (int i = 0; i < EMBEDDED_SENSORS; i++) {
+                Sensor sensor = new Sensor("Sensor " + i, SensorType.MOTION);
+                repository.addSensor(sensor);
+                sensorIds.add(sensor.getSensorId());
+            }
+            repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            try (SecurityEventLoop eventLoop = new SecurityEventLoop(new SecurityService(repository, new FakeImageService()));
+                 SensorEventServer server = new SensorEventServer(eventLoop, new InetSocketAddress("127.0.0.1", 0))) {
+                System.out.println(run(new InetSocketAddress("127.0.0.1", server.getPort()), sensorIds, connections, eventsPerConnection));
+            }
+            return;
+        }
+
+        int split = args[0].lastIndexOf(':');
+        InetSocketAddress address = new InetSocketAddress(args[0].substring(0, split), Integer.parseInt(args[0].substring(split + 1)));
+        List<UUID> sensorIds = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            sensorIds.add(UUID.fromString(args[i]));
+        }
+        if (sensorIds.isEmpty()) {
+            System.err.println("At least one sensorId is required");
+            System.exit(2);
+        }
+        System.out.println(run(address, sensorIds, connections, eventsPerConnection));
+    }
+}
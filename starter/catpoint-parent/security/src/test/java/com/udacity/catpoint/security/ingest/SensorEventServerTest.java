@@ -0,0 +1,153 @@
+package com.udacity.catpoint.security.ingest;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.*;
+import com.udacity.catpoint.security.service.SecurityEventLoop;
+import com.udacity.catpoint.security.service.SecurityService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+
+/**
+ * Tests for SensorEventServer and its load generator over a real socket.
+ */
+public class SensorEventServerTest {
+
+    private static final int SENSOR_COUNT = 10;
+    private static final int CONNECTIONS = 100;
+    private static final int EVENTS_PER_CONNECTION = 20;
+
+    private InMemorySecurityRepositoryImpl repository;
+    private SecurityEventLoop eventLoop;
+    private SensorEventServer server;
+    private final List<Sensor> sensors = new ArrayList<>();
+
+    @BeforeEach
+    void init() throws IOException {
+        repository = new InMemorySecurityRepositoryImpl();
+        for (int i = 0; i < SENSOR_COUNT; i++) {
+            Sensor sensor = new Sensor("Sensor " + i, SensorType.DOOR);
+            repository.addSensor(sensor);
+            sensors.add(sensor);
+        }
+        repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        eventLoop = new SecurityEventLoop(new SecurityService(repository, mock(ImageService.class)));
+        server = new SensorEventServer(eventLoop, new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        server.close();
+        eventLoop.close();
+    }
+
+    private InetSocketAddress address() {
+        return new InetSocketAddress("127.0.0.1", server.getPort());
+    }
+
+    @Test
+    public void events_appliedAndAnsweredWithAlarmStatus() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort());
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            UUID first = sensors.get(0).getSensorId();
+            writer.println("ACTIVATE " + first);
+            assertEquals("OK PENDING_ALARM", reader.readLine());
+            writer.println("ACTIVATE " + sensors.get(1).getSensorId());
+            assertEquals("OK ALARM", reader.readLine());
+            writer.println("DEACTIVATE " + first);
+            assertEquals("OK ALARM", reader.readLine());
+        }
+        assertEquals(1, repository.getActiveSensorCount());
+    }
+
+    @Test
+    public void badRequests_answeredWithErrorAndConnectionKept() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort());
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String request : new String[]{"", "ACTIVATE", "ACTIVATE not-a-uuid", "OPEN " + sensors.get(0).getSensorId(),
+                    "ACTIVATE " + UUID.randomUUID()}) {
+                writer.println(request);
+                assertTrue(reader.readLine().startsWith("ERR "), request);
+            }
+            writer.println("ACTIVATE " + sensors.get(0).getSensorId());
+            assertEquals("OK PENDING_ALARM", reader.readLine());
+        }
+    }
+
+    // A gateway that never ends its line is cut off instead of being buffered without limit
+    @Test
+    public void overlongLine_answeredWithErrorAndConnectionDropped() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort());
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            //a line of exactly the limit is still read
+            writer.println("ACTIVATE " + sensors.get(0).getSensorId() + " ".repeat(SensorEventServer.MAX_LINE_LENGTH - 45));
+            assertEquals("OK PENDING_ALARM", reader.readLine());
+
+            writer.print("A".repeat(SensorEventServer.MAX_LINE_LENGTH + 1));
+            writer.flush();
+            assertEquals("ERR line too long", reader.readLine());
+            assertNull(reader.readLine());
+        }
+    }
+
+    // The event loop is stuck on another command, so the reply never comes in time
+    @Test
+    public void slowEventLoop_answeredWithTimeoutAndConnectionKept() throws Exception {
+        CountDownLatch stuck = new CountDownLatch(1);
+        try (SensorEventServer impatient = new SensorEventServer(eventLoop, new InetSocketAddress("127.0.0.1", 0), Duration.ofMillis(100));
+             Socket socket = new Socket("127.0.0.1", impatient.getPort());
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            eventLoop.execute(service -> {
+                try {
+                    stuck.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            writer.println("ACTIVATE " + sensors.get(0).getSensorId());
+            assertEquals("ERR timed out", reader.readLine());
+
+            stuck.countDown();
+            writer.println("ACTIVATE " + sensors.get(1).getSensorId());
+            assertEquals("OK ALARM", reader.readLine());
+        } finally {
+            stuck.countDown();
+        }
+    }
+
+    // Connections share sensors, so only the bookkeeping, not the final activation, is predictable
+    @Test
+    public void loadGenerator_manyConnections_everyEventAnswered() throws InterruptedException {
+        List<UUID> sensorIds = new ArrayList<>();
+        sensors.forEach(sensor -> sensorIds.add(sensor.getSensorId()));
+        SensorEventLoadGenerator.Report report = SensorEventLoadGenerator.run(address(), sensorIds, CONNECTIONS, EVENTS_PER_CONNECTION);
+
+        assertEquals(0, report.getFailedConnections());
+        assertEquals(0, report.getErrors());
+        assertEquals(CONNECTIONS * EVENTS_PER_CONNECTION, report.getEvents());
+        assertTrue(report.percentileMicros(0.5) <= report.percentileMicros(0.99));
+        eventLoop.awaitProcessed();
+        assertEquals(sensors.stream().filter(Sensor::getActive).count(), repository.getActiveSensorCount());
+    }
+}
@@ -0,0 +1,60 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of evaluating the alarm rules: the imperative branches SecurityService used before against
+ * one read from AlarmTransitionTable, over a fixed mix of random states and events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlarmTransitionBenchmark {
+
+    private static final int STATES = 1024;
+
+    private final ArmingStatus[] armingStatuses = new ArmingStatus[STATES];
+    private final AlarmStatus[] alarmStatuses = new AlarmStatus[STATES];
+    private final AlarmEvent[] events = new AlarmEvent[STATES];
+    private final boolean[] anySensorActive = new boolean[STATES];
+    private final boolean[] cameraShowsCat = new boolean[STATES];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < STATES; i++) {
+            armingStatuses[i] = ArmingStatus.values()[random.nextInt(ArmingStatus.values().length)];
+            alarmStatuses[i] = AlarmStatus.values()[random.nextInt(AlarmStatus.values().length)];
+            events[i] = AlarmEvent.values()[random.nextInt(AlarmEvent.values().length)];
+            anySensorActive[i] = random.nextBoolean();
+            cameraShowsCat[i] = random.nextBoolean();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STATES)
+    public void imperativeRules(Blackhole blackhole) {
+        for (int i = 0; i < STATES; i++) {
+            blackhole.consume(AlarmTransitionTableTest.imperativeRules(armingStatuses[i], alarmStatuses[i], events[i],
+                    anySensorActive[i], cameraShowsCat[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STATES)
+    public void transitionTable(Blackhole blackhole) {
+        for (int i = 0; i < STATES; i++) {
+            blackhole.consume(AlarmTransitionTable.next(armingStatuses[i], alarmStatuses[i], events[i],
+                    anySensorActive[i], cameraShowsCat[i]));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Checks the alarm transition table against the imperative rules SecurityService used before the
+ * table, over every combination of its inputs.
+ */
+public class AlarmTransitionTableTest {
+
+    /**
+     * The rules as handleSensorActivated, handleSensorDeactivated, catDetected and setArmingStatus
+     * implemented them, returning what they passed to setAlarmStatus, or null if they did not call it.
+     */
+    static AlarmStatus imperativeRules(ArmingStatus armingStatus, AlarmStatus alarmStatus, AlarmEvent event,
+                                       boolean anySensorActive, boolean cameraShowsCat) {
+        switch (event) {
+            case SENSOR_ACTIVATED:
+                if (armingStatus == ArmingStatus.ARMED_HOME
+                        || armingStatus == ArmingStatus.ARMED_AWAY) {
+                    switch (alarmStatus) {
+                        case PENDING_ALARM:
+                            return AlarmStatus.ALARM;
+                        case NO_ALARM:
+                            return AlarmStatus.PENDING_ALARM;
+                    }
+                }
+                return null;
+            case SENSOR_DEACTIVATED:
+                if (alarmStatus == AlarmStatus.PENDING_ALARM && !anySensorActive) {
+                    return AlarmStatus.NO_ALARM;
+                }
+                return null;
+            case CAT_DETECTED:
+            case NO_CAT_DETECTED:
+                boolean cat = event == AlarmEvent.CAT_DETECTED;
+                if (cat && armingStatus == ArmingStatus.ARMED_HOME) {
+                    return AlarmStatus.ALARM;
+                } else if (!cat && !anySensorActive) {
+                    return AlarmStatus.NO_ALARM;
+                }
+                return null;
+            case DISARMED:
+                return AlarmStatus.NO_ALARM;
+            case ARMED_HOME:
+                if (cameraShowsCat) return AlarmStatus.ALARM;
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    @Test
+    public void table_matchesImperativeRules_overFullStateSpace() {
+        int states = 0;
+        for (ArmingStatus armingStatus : ArmingStatus.values()) {
+            for (AlarmStatus alarmStatus : AlarmStatus.values()) {
+                for (AlarmEvent event : AlarmEvent.values()) {
+                    for (boolean anySensorActive : new boolean[]{false, true}) {
+                        for (boolean cameraShowsCat : new boolean[]{false, true}) {
+                            assertEquals(imperativeRules(armingStatus, alarmStatus, event, anySensorActive, cameraShowsCat),
+                                    AlarmTransitionTable.next(armingStatus, alarmStatus, event, anySensorActive, cameraShowsCat),
+                                    () -> armingStatus + ", " + alarmStatus + ", " + event + ", anySensorActive=" + anySensorActive
+                                            + ", cameraShowsCat=" + cameraShowsCat);
+                            states++;
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(ArmingStatus.values().length * AlarmStatus.values().length * AlarmEvent.values().length * 4, states);
+    }
+
+    // Repositories that have never stored a status report null, which the rules treat as the defaults
+    @Test
+    public void nullStatuses_treatedAsDisarmedAndNoAlarm() {
+        for (AlarmEvent event : AlarmEvent.values()) {
+            for (boolean anySensorActive : new boolean[]{false, true}) {
+                for (boolean cameraShowsCat : new boolean[]{false, true}) {
+                    assertEquals(AlarmTransitionTable.next(ArmingStatus.DISARMED, AlarmStatus.NO_ALARM, event, anySensorActive, cameraShowsCat),
+                            AlarmTransitionTable.next(null, null, event, anySensorActive, cameraShowsCat));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.PartitionedHomeStore;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sensor event throughput of a HomeRegistry hosting 100k resident homes, with events spread
+ * randomly over the homes. The score is events per second for the whole registry; divide it by
+ * the workers parameter for events per second per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class HomeRegistryBenchmark {
+
+    private static final int HOMES = 100_000;
+    private static final int EVENTS = 10_000;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private Path storeDirectory;
+    private HomeRegistry registry;
+    private String[] homeIds;
+    private Sensor[] sensors;
+    private int[] targets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        storeDirectory = Files.createTempDirectory("home-registry-benchmark");
+        registry = new HomeRegistry(new PartitionedHomeStore(storeDirectory), null, workers, Duration.ofHours(1));
+        homeIds = new String[HOMES];
+        sensors = new Sensor[HOMES];
+        for (int i = 0; i < HOMES; i++) {
+            homeIds[i] = "home-" + i;
+            sensors[i] = new Sensor("Sensor " + i, SensorType.MOTION);
+            Sensor sensor = sensors[i];
+            registry.execute(homeIds[i], service -> service.addSensor(sensor));
+        }
+        registry.submit(homeIds[HOMES - 1], SecurityService::getAlarmStatus).get();
+
+        Random random = new Random(42);
+        targets = new int[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            targets[i] = random.nextInt(HOMES);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException, IOException {
+        registry.close();
+        try (var paths = Files.walk(storeDirectory)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void sensorToggle() throws InterruptedException {
+        CountDownLatch processed = new CountDownLatch(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            int home = targets[i];
+            //each sensor is only ever touched by its own home's commands
+            registry.execute(homeIds[home], service -> {
+                Sensor sensor = sensors[home];
+                service.changeSensorActivationStatus(sensor, !sensor.getActive());
+                processed.countDown();
+            });
+        }
+        processed.await();
+    }
+}
@@ -0,0 +1,162 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+
+/**
+ * Unit and stress tests for HomeRegistry and PartitionedHomeStore.
+ */
+public class HomeRegistryTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int HOMES = 50;
+    private static final int COMMANDS_PER_PRODUCER = 5_000;
+
+    @TempDir
+    Path tempDir;
+
+    private final ImageService imageService = mock(ImageService.class);
+
+    private HomeRegistry newRegistry(Duration idleTimeout) {
+        return new HomeRegistry(new PartitionedHomeStore(tempDir, 4), imageService, 2, idleTimeout);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void homes_keepSeparateState() throws Exception {
+        try (HomeRegistry registry = newRegistry(HomeRegistry.DEFAULT_IDLE_TIMEOUT)) {
+            Sensor door = new Sensor("Door", SensorType.DOOR);
+            registry.execute("home-a", service -> service.addSensor(door));
+            registry.execute("home-a", service -> service.setArmingStatus(ArmingStatus.ARMED_AWAY));
+            registry.execute("home-a", service -> service.changeSensorActivationStatus(door, true));
+
+            assertEquals(AlarmStatus.PENDING_ALARM, await(registry.submit("home-a", SecurityService::getAlarmStatus)));
+            assertEquals(AlarmStatus.NO_ALARM, await(registry.submit("home-b", SecurityService::getAlarmStatus)));
+            assertEquals(ArmingStatus.DISARMED, await(registry.submit("home-b", SecurityService::getArmingStatus)));
+            assertTrue(await(registry.submit("home-b", SecurityService::getSensors)).isEmpty());
+            assertEquals(2, registry.residentHomes());
+        }
+    }
+
+    @Test
+    public void idleHome_pagedOutAndLoadedAgainWithItsState() throws Exception {
+        try (HomeRegistry registry = newRegistry(Duration.ofMillis(50))) {
+            Sensor window = new Sensor("Window", SensorType.WINDOW);
+            registry.execute("idle", service -> service.addSensor(window));
+            registry.execute("idle", service -> service.setArmingStatus(ArmingStatus.ARMED_HOME));
+            registry.execute("idle", service -> service.changeSensorActivationStatus(window, true));
+            await(registry.submit("idle", SecurityService::getAlarmStatus));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (registry.residentHomes() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, registry.residentHomes());
+
+            assertEquals(ArmingStatus.ARMED_HOME, await(registry.submit("idle", SecurityService::getArmingStatus)));
+            assertEquals(AlarmStatus.PENDING_ALARM, await(registry.submit("idle", SecurityService::getAlarmStatus)));
+            Sensor loaded = await(registry.submit("idle", service -> service.getSensors().iterator().next()));
+            assertEquals(window.getSensorId(), loaded.getSensorId());
+            assertTrue(loaded.getActive());
+        }
+    }
+
+    @Test
+    public void close_savesEveryHome() throws Exception {
+        try (HomeRegistry registry = newRegistry(HomeRegistry.DEFAULT_IDLE_TIMEOUT)) {
+            for (int i = 0; i < HOMES; i++) {
+                String homeId = "home-" + i;
+                registry.execute(homeId, service -> service.addSensor(new Sensor(homeId, SensorType.MOTION)));
+            }
+        }
+
+        PartitionedHomeStore store = new PartitionedHomeStore(tempDir, 4);
+        for (int i = 0; i < HOMES; i++) {
+            Sensor sensor = store.load("home-" + i).getSensors().iterator().next();
+            assertEquals("home-" + i, sensor.getName());
+        }
+    }
+
+    // Producers spread commands over many homes; each home must apply its commands one at a time
+    // and in the order each producer sent them, with nothing lost
+    @Test
+    public void concurrentProducers_commandsAppliedInOrderPerHome() throws Exception {
+        Map<String, List<int[]>> applied = new ConcurrentHashMap<>();
+        try (HomeRegistry registry = newRegistry(HomeRegistry.DEFAULT_IDLE_TIMEOUT)) {
+            List<Thread> producers = new ArrayList<>();
+            for (int p = 0; p < PRODUCERS; p++) {
+                int producer = p;
+                Thread thread = new Thread(() -> {
+                    for (int sequence = 0; sequence < COMMANDS_PER_PRODUCER; sequence++) {
+                        String homeId = "home-" + (sequence * 7 + producer) % HOMES;
+                        int[] command = {producer, sequence};
+                        //a plain list, only safe if commands for one home never overlap
+                        registry.execute(homeId, service -> applied.computeIfAbsent(homeId, id -> new ArrayList<>()).add(command));
+                    }
+                });
+                producers.add(thread);
+                thread.start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+        }
+
+        int total = 0;
+        for (List<int[]> commands : applied.values()) {
+            int[] lastSequence = {-1, -1, -1, -1};
+            for (int[] command : commands) {
+                assertTrue(command[1] > lastSequence[command[0]]);
+                lastSequence[command[0]] = command[1];
+            }
+            total += commands.size();
+        }
+        assertEquals(PRODUCERS * COMMANDS_PER_PRODUCER, total);
+    }
+
+    @Test
+    public void failingCommand_doesNotStopHome() throws Exception {
+        try (HomeRegistry registry = newRegistry(HomeRegistry.DEFAULT_IDLE_TIMEOUT)) {
+            Thread.UncaughtExceptionHandler quiet = (thread, e) -> { };
+            registry.execute("home", service -> {
+                Thread.currentThread().setUncaughtExceptionHandler(quiet);
+                throw new IllegalStateException("boom");
+            });
+            registry.execute("home", service -> service.setAlarmStatus(AlarmStatus.ALARM));
+            assertEquals(AlarmStatus.ALARM, await(registry.submit("home", SecurityService::getAlarmStatus)));
+        }
+    }
+
+    @Test
+    public void invalidHomeId_rejected() throws Exception {
+        try (HomeRegistry registry = newRegistry(HomeRegistry.DEFAULT_IDLE_TIMEOUT)) {
+            assertThrows(IllegalArgumentException.class, () -> registry.execute("../escape", service -> { }));
+            assertThrows(IllegalArgumentException.class, () -> registry.execute("", service -> { }));
+        }
+    }
+
+    @Test
+    public void closedRegistry_rejectsCommands() throws Exception {
+        HomeRegistry registry = newRegistry(HomeRegistry.DEFAULT_IDLE_TIMEOUT);
+        registry.close();
+        assertThrows(IllegalStateException.class, () -> registry.execute("home", service -> { }));
+    }
+}
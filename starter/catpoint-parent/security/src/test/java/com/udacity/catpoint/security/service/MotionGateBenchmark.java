@@ -0,0 +1,52 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.image.service.MotionGatedImageService;
+import com.udacity.catpoint.security.data.InMemorySecurityRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per 1080p camera frame of the motion gate on a still scene, on its own and as seen through
+ * SecurityService.processImage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MotionGateBenchmark {
+
+    private BufferedImage frame;
+    private MotionGatedImageService gate;
+    private SecurityService securityService;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        frame = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < frame.getHeight(); y++) {
+            for (int x = 0; x < frame.getWidth(); x++) {
+                frame.setRGB(x, y, random.nextInt(1 << 24));
+            }
+        }
+        gate = new MotionGatedImageService(new FakeImageService());
+        gate.imageContainsCat(frame, 50f);
+        securityService = new SecurityService(new InMemorySecurityRepositoryImpl(), new MotionGatedImageService(new FakeImageService()));
+        securityService.processImage(frame);
+    }
+
+    @Benchmark
+    public boolean gate() {
+        return gate.imageContainsCat(frame, 50f);
+    }
+
+    @Benchmark
+    public Object processImage() {
+        return securityService.processImage(frame);
+    }
+}
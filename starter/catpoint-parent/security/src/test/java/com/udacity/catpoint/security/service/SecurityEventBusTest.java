@@ -0,0 +1,187 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.application.StatusListener;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+
+/**
+ * Unit test for SecurityEventBus.
+ */
+public class SecurityEventBusTest {
+
+    // Executor that only runs tasks when the test says so
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final StatusListener statusListener = mock(StatusListener.class);
+    private final Sensor sensor1 = new Sensor("Front Door", SensorType.DOOR);
+    private final Sensor sensor2 = new Sensor("Back Door", SensorType.DOOR);
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+    }
+
+    @Test
+    public void subscriber_onlyReceivesItsOwnEventType() {
+        SecurityEventBus eventBus = new SecurityEventBus(Runnable::run);
+        List<AlarmStatus> received = new ArrayList<>();
+        eventBus.subscribe(SecurityEventType.ALARM_STATUS_CHANGED, received::add);
+        eventBus.publish(SecurityEventType.CAT_DETECTED, true);
+        eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor1));
+        eventBus.publish(SecurityEventType.ALARM_STATUS_CHANGED, AlarmStatus.ALARM);
+        assertEquals(List.of(AlarmStatus.ALARM), received);
+    }
+
+    // Refused once, as a shut-down or saturated executor would; the next event gets through with it
+    @Test
+    public void refusedDelivery_retriedWithNextEvent() {
+        boolean[] refuse = {true};
+        SecurityEventBus eventBus = new SecurityEventBus(task -> {
+            if (refuse[0]) {
+                throw new RejectedExecutionException("saturated");
+            }
+            tasks.add(task);
+        });
+        List<Collection<Sensor>> first = new ArrayList<>();
+        List<Collection<Sensor>> second = new ArrayList<>();
+        eventBus.subscribe(SecurityEventType.SENSORS_CHANGED, first::add);
+        eventBus.subscribe(SecurityEventType.SENSORS_CHANGED, second::add);
+
+        RejectedExecutionException refused = assertThrows(RejectedExecutionException.class,
+                () -> eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor1)));
+        //both subscribers were tried
+        assertEquals(1, refused.getSuppressed().length);
+
+        refuse[0] = false;
+        eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor2));
+        runTasks();
+        assertEquals(1, first.size());
+        assertEquals(Set.of(sensor1, sensor2), Set.copyOf(first.get(0)));
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void queuedSensorChanges_deliveredOnceWithEverySensor() {
+        SecurityEventBus eventBus = new SecurityEventBus(tasks::add);
+        List<Collection<Sensor>> received = new ArrayList<>();
+        eventBus.subscribe(SecurityEventType.SENSORS_CHANGED, received::add);
+        eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor1));
+        eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor2));
+        eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor1));
+        assertEquals(1, tasks.size());
+        runTasks();
+        assertEquals(1, received.size());
+        assertEquals(Set.of(sensor1, sensor2), Set.copyOf(received.get(0)));
+    }
+
+    @Test
+    public void closedSubscription_receivesNothing() {
+        SecurityEventBus eventBus = new SecurityEventBus(tasks::add);
+        List<Boolean> received = new ArrayList<>();
+        SecurityEventBus.Subscription subscription = eventBus.subscribe(SecurityEventType.CAT_DETECTED, received::add);
+        eventBus.publish(SecurityEventType.CAT_DETECTED, true);
+        subscription.close();
+        eventBus.publish(SecurityEventType.CAT_DETECTED, false);
+        runTasks();
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void repeatedSensorStatusChanges_collapsedIntoOne() {
+        SecurityEventBus eventBus = new SecurityEventBus(tasks::add);
+        eventBus.addStatusListener(statusListener);
+        for (int i = 0; i < 5; i++) {
+            eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor1));
+        }
+        assertEquals(1, tasks.size());
+        runTasks();
+        verify(statusListener, times(1)).sensorStatusChanged();
+    }
+
+    @Test
+    public void queuedAlarmStatuses_onlyLatestDelivered() {
+        SecurityEventBus eventBus = new SecurityEventBus(tasks::add);
+        eventBus.addStatusListener(statusListener);
+        eventBus.publish(SecurityEventType.ALARM_STATUS_CHANGED, AlarmStatus.PENDING_ALARM);
+        eventBus.publish(SecurityEventType.ALARM_STATUS_CHANGED, AlarmStatus.ALARM);
+        eventBus.publish(SecurityEventType.ALARM_STATUS_CHANGED, AlarmStatus.NO_ALARM);
+        runTasks();
+        verify(statusListener).notify(AlarmStatus.NO_ALARM);
+        verify(statusListener, never()).notify(AlarmStatus.PENDING_ALARM);
+        verify(statusListener, never()).notify(AlarmStatus.ALARM);
+    }
+
+    @Test
+    public void directExecutor_everyNotificationDeliveredInOrder() {
+        SecurityEventBus eventBus = new SecurityEventBus(Runnable::run);
+        eventBus.addStatusListener(statusListener);
+        eventBus.publish(SecurityEventType.ALARM_STATUS_CHANGED, AlarmStatus.PENDING_ALARM);
+        eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor1));
+        eventBus.publish(SecurityEventType.ALARM_STATUS_CHANGED, AlarmStatus.ALARM);
+        eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor2));
+
+        InOrder inOrder = inOrder(statusListener);
+        inOrder.verify(statusListener).notify(AlarmStatus.PENDING_ALARM);
+        inOrder.verify(statusListener).sensorStatusChanged();
+        inOrder.verify(statusListener).notify(AlarmStatus.ALARM);
+        inOrder.verify(statusListener).sensorStatusChanged();
+    }
+
+    @Test
+    public void removedListener_pendingNotificationsDropped() {
+        SecurityEventBus eventBus = new SecurityEventBus(tasks::add);
+        eventBus.addStatusListener(statusListener);
+        eventBus.publish(SecurityEventType.CAT_DETECTED, true);
+        eventBus.removeStatusListener(statusListener);
+        runTasks();
+        verifyNoInteractions(statusListener);
+    }
+
+    // A listener that blocks holds up neither the publisher nor the other listeners
+    @Test
+    public void slowListener_doesNotBlockCallerOrOtherListeners() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastNotified = new CountDownLatch(1);
+        StatusListener slow = mock(StatusListener.class);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(slow).sensorStatusChanged();
+        StatusListener fast = mock(StatusListener.class);
+        doAnswer(invocation -> {
+            fastNotified.countDown();
+            return null;
+        }).when(fast).sensorStatusChanged();
+
+        SecurityEventBus eventBus = new SecurityEventBus(executor);
+        eventBus.addStatusListener(slow);
+        eventBus.addStatusListener(fast);
+        eventBus.publish(SecurityEventType.SENSORS_CHANGED, List.of(sensor1));
+
+        assertTrue(fastNotified.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        verify(slow, times(1)).sensorStatusChanged();
+    }
+}
@@ -0,0 +1,154 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Sustained command throughput of SecurityEventLoop with several producer threads. Producers are
+ * held back by the bounded ring buffer, so the score is the rate the loop thread actually applies
+ * commands at; the target is at least one million sensor events per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class SecurityEventLoopBenchmark {
+
+    private static final int SENSOR_COUNT = 64;
+
+    private SecurityEventLoop eventLoop;
+    private Sensor[] sensors;
+
+    /**
+     * Repository that only keeps state in memory, so the benchmark measures the loop rather than
+     * storage.
+     */
+    private static class InMemoryRepository implements SecurityRepository {
+        private final Map<UUID, Sensor> sensors = new HashMap<>();
+        private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+        private ArmingStatus armingStatus = ArmingStatus.ARMED_AWAY;
+        private int activeSensorCount;
+
+        @Override
+        public void addSensor(Sensor sensor) {
+            sensors.put(sensor.getSensorId(), sensor);
+        }
+
+        @Override
+        public void removeSensor(Sensor sensor) {
+            sensors.remove(sensor.getSensorId());
+        }
+
+        @Override
+        public void updateSensor(Sensor sensor) {
+            //the benchmark toggles sensors, so a running count is enough
+            activeSensorCount += sensor.getActive() ? 1 : -1;
+        }
+
+        @Override
+        public Collection<Sensor> resetAllSensors() {
+            List<Sensor> active = sensors.values().stream().filter(Sensor::getActive).collect(Collectors.toList());
+            active.forEach(s -> s.setActive(false));
+            activeSensorCount = 0;
+            return active;
+        }
+
+        @Override
+        public void setAlarmStatus(AlarmStatus alarmStatus) {
+            this.alarmStatus = alarmStatus;
+        }
+
+        @Override
+        public void setArmingStatus(ArmingStatus armingStatus) {
+            this.armingStatus = armingStatus;
+        }
+
+        @Override
+        public Set<Sensor> getSensors() {
+            return Set.copyOf(sensors.values());
+        }
+
+        @Override
+        public Sensor getSensor(UUID sensorId) {
+            return sensors.get(sensorId);
+        }
+
+        @Override
+        public Set<Sensor> getSensors(SensorType sensorType) {
+            return Set.of();
+        }
+
+        @Override
+        public Set<Sensor> getActiveSensors(SensorType sensorType) {
+            return Set.of();
+        }
+
+        @Override
+        public AlarmStatus getAlarmStatus() {
+            return alarmStatus;
+        }
+
+        @Override
+        public ArmingStatus getArmingStatus() {
+            return armingStatus;
+        }
+
+        @Override
+        public int getActiveSensorCount() {
+            return activeSensorCount;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        private int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryRepository repository = new InMemoryRepository();
+        sensors = new Sensor[SENSOR_COUNT];
+        for (int i = 0; i < SENSOR_COUNT; i++) {
+            sensors[i] = new Sensor("Sensor " + i, SensorType.MOTION);
+            repository.addSensor(sensors[i]);
+        }
+        eventLoop = new SecurityEventLoop(new SecurityService(repository, null));
+    }
+
+    @TearDown(Level.Iteration)
+    public void awaitProcessed() throws InterruptedException {
+        eventLoop.awaitProcessed();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        eventLoop.close();
+    }
+
+    @Benchmark
+    public void emptyCommand() {
+        eventLoop.execute(service -> {});
+    }
+
+    @Benchmark
+    public void sensorToggle(Producer producer) {
+        //each sensor is only ever read and written on the loop thread
+        int index = producer.next++ & (SENSOR_COUNT - 1);
+        eventLoop.execute(service -> {
+            Sensor sensor = sensors[index];
+            service.changeSensorActivationStatus(sensor, !sensor.getActive());
+        });
+    }
+}
@@ -0,0 +1,277 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+
+/**
+ * Unit and stress tests for SecurityEventLoop and its ring buffer.
+ */
+public class SecurityEventLoopTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int COMMANDS_PER_PRODUCER = 2_500;
+    private static final int SENSOR_COUNT = 5;
+
+    @TempDir
+    Path tempDir;
+
+    private final ImageService imageService = mock(ImageService.class);
+
+    // One command as the event loop applied it
+    private static class AppliedCommand {
+        private final int producer;
+        private final int sequence;
+        private final int sensorIndex;
+        private final boolean active;
+
+        private AppliedCommand(int producer, int sequence, int sensorIndex, boolean active) {
+            this.producer = producer;
+            this.sequence = sequence;
+            this.sensorIndex = sensorIndex;
+            this.active = active;
+        }
+    }
+
+    private JournalSecurityRepositoryImpl newRepository(String name, List<UUID> sensorIds) {
+        JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(tempDir.resolve(name));
+        for (int i = 0; i < sensorIds.size(); i++) {
+            Sensor sensor = new Sensor("Sensor " + i, SensorType.DOOR);
+            sensor.setSensorId(sensorIds.get(i));
+            repository.addSensor(sensor);
+        }
+        repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        return repository;
+    }
+
+    @Test
+    public void ringBuffer_fifoAndRejectsWhenFull() {
+        CommandRingBuffer<Integer> buffer = new CommandRingBuffer<>(3);
+        assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(0, buffer.poll());
+        assertTrue(buffer.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void ringBuffer_concurrentProducers_everyElementPolledOnce() throws InterruptedException {
+        CommandRingBuffer<Integer> buffer = new CommandRingBuffer<>(64);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int base = p * COMMANDS_PER_PRODUCER;
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < COMMANDS_PER_PRODUCER; i++) {
+                    while (!buffer.offer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        Set<Integer> polled = new HashSet<>();
+        int[] lastPerProducer = new int[PRODUCERS];
+        Arrays.fill(lastPerProducer, -1);
+        while (polled.size() < PRODUCERS * COMMANDS_PER_PRODUCER) {
+            Integer element = buffer.poll();
+            if (element == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            assertTrue(polled.add(element));
+            int producer = element / COMMANDS_PER_PRODUCER;
+            assertTrue(element > lastPerProducer[producer]);
+            lastPerProducer[producer] = element;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertNull(buffer.poll());
+    }
+
+    // Concurrent submissions must end in the same state as some sequential order that keeps each
+    // producer's own order. The loop records the order it applied commands in, and replaying that
+    // history on a fresh service without the loop has to reproduce the final state exactly.
+    @Test
+    public void concurrentProducers_finalStateMatchesSequentialReplayOfAppliedOrder() throws InterruptedException {
+        List<UUID> sensorIds = new ArrayList<>();
+        for (int i = 0; i < SENSOR_COUNT; i++) {
+            sensorIds.add(UUID.randomUUID());
+        }
+        JournalSecurityRepositoryImpl loopRepository = newRepository("loop", sensorIds);
+        SecurityEventLoop eventLoop = new SecurityEventLoop(new SecurityService(loopRepository, imageService), 64);
+        List<AppliedCommand> history = new ArrayList<>();
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(100 + producer);
+                for (int i = 0; i < COMMANDS_PER_PRODUCER; i++) {
+                    AppliedCommand command = new AppliedCommand(producer, i, random.nextInt(SENSOR_COUNT), random.nextBoolean());
+                    eventLoop.execute(service -> {
+                        history.add(command);
+                        service.changeSensorActivationStatus(loopRepository.getSensor(sensorIds.get(command.sensorIndex)), command.active);
+                    });
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        eventLoop.close();
+
+        JournalSecurityRepositoryImpl replayRepository = newRepository("replay", sensorIds);
+        SecurityService replay = new SecurityService(replayRepository, imageService);
+        for (AppliedCommand command : history) {
+            replay.changeSensorActivationStatus(replayRepository.getSensor(sensorIds.get(command.sensorIndex)), command.active);
+        }
+
+        assertEquals(PRODUCERS * COMMANDS_PER_PRODUCER, history.size());
+        int[] nextSequence = new int[PRODUCERS];
+        for (AppliedCommand command : history) {
+            assertEquals(nextSequence[command.producer]++, command.sequence);
+        }
+        assertEquals(replayRepository.getAlarmStatus(), loopRepository.getAlarmStatus());
+        assertEquals(replayRepository.getActiveSensorCount(), loopRepository.getActiveSensorCount());
+        for (UUID sensorId : sensorIds) {
+            assertEquals(replayRepository.getSensor(sensorId).getActive(), loopRepository.getSensor(sensorId).getActive());
+        }
+        loopRepository.close();
+        replayRepository.close();
+    }
+
+    @Test
+    public void failingCommand_loopKeepsRunning() throws InterruptedException {
+        SecurityEventLoop eventLoop = new SecurityEventLoop(new SecurityService(mock(SecurityRepository.class), imageService));
+        AtomicInteger applied = new AtomicInteger();
+        Thread.UncaughtExceptionHandler quiet = (t, e) -> applied.incrementAndGet();
+        eventLoop.execute(service -> Thread.currentThread().setUncaughtExceptionHandler(quiet));
+        eventLoop.execute(service -> {
+            throw new IllegalStateException("boom");
+        });
+        eventLoop.execute(service -> applied.incrementAndGet());
+        eventLoop.awaitProcessed();
+        assertEquals(2, applied.get());
+        eventLoop.close();
+        assertThrows(IllegalStateException.class, () -> eventLoop.execute(service -> {}));
+    }
+
+    // Waiting for room from the loop thread would wait for itself, so the command is refused
+    @Test
+    public void fullBufferFromLoopThread_refusedInsteadOfSpinning() throws InterruptedException {
+        SecurityEventLoop eventLoop = new SecurityEventLoop(new SecurityService(mock(SecurityRepository.class), imageService), 4);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger applied = new AtomicInteger();
+        List<RuntimeException> refused = new ArrayList<>();
+        CountDownLatch submitted = new CountDownLatch(1);
+        eventLoop.execute(service -> {
+            try {
+                for (int i = 0; i < 5; i++) {
+                    eventLoop.execute(queued -> applied.incrementAndGet());
+                    accepted.incrementAndGet();
+                }
+            } catch (IllegalStateException e) {
+                refused.add(e);
+            }
+            submitted.countDown();
+        });
+        //awaitProcessed takes a slot too, so only once the buffer has been filled
+        submitted.await();
+        eventLoop.awaitProcessed();
+        assertEquals(1, refused.size());
+        assertEquals(4, accepted.get());
+        assertEquals(4, applied.get());
+        eventLoop.close();
+    }
+
+    // With nothing to do the loop must sleep until woken, not wake up every so often to poll
+    @Test
+    public void idleLoop_parksUntilWoken() throws InterruptedException {
+        SecurityEventLoop eventLoop = new SecurityEventLoop(new SecurityService(mock(SecurityRepository.class), imageService));
+        Thread[] loopThread = new Thread[1];
+        eventLoop.execute(service -> loopThread[0] = Thread.currentThread());
+        eventLoop.awaitProcessed();
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (loopThread[0].getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.WAITING, loopThread[0].getState());
+
+        AtomicInteger applied = new AtomicInteger();
+        eventLoop.execute(service -> applied.incrementAndGet());
+        eventLoop.awaitProcessed();
+        assertEquals(1, applied.get());
+        eventLoop.close();
+        assertFalse(loopThread[0].isAlive());
+    }
+
+    // Producers keep submitting into a tiny buffer while the loop is closed, from outside the loop
+    // and from one of its own commands; every command execute accepted must have been applied
+    @Test
+    public void closeRacingProducers_everyAcceptedCommandApplied() throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            SecurityEventLoop eventLoop = new SecurityEventLoop(new SecurityService(mock(SecurityRepository.class), imageService), 4);
+            AtomicInteger accepted = new AtomicInteger();
+            AtomicInteger applied = new AtomicInteger();
+            List<Thread> producers = new ArrayList<>();
+            for (int p = 0; p < PRODUCERS; p++) {
+                Thread producer = new Thread(() -> {
+                    try {
+                        while (true) {
+                            eventLoop.execute(service -> applied.incrementAndGet());
+                            accepted.incrementAndGet();
+                        }
+                    } catch (IllegalStateException closed) {
+                        //the loop has been closed
+                    }
+                });
+                producers.add(producer);
+                producer.start();
+            }
+            Thread.sleep(1);
+            if (round % 2 == 0) {
+                eventLoop.close();
+            } else {
+                eventLoop.execute(service -> {
+                    try {
+                        eventLoop.close();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            eventLoop.close();
+            assertEquals(accepted.get(), applied.get(), "round " + round);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.application.StatusListener;
+import com.udacity.catpoint.security.data.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+
+/**
+ * Checks that applying sensor changes as a batch ends in the same state as applying them one at a time.
+ */
+public class SecurityServiceBatchTest {
+
+    private static final int SENSOR_COUNT = 5;
+    private static final int CHANGES_PER_BATCH = 20;
+    private static final int TRIALS = 200;
+
+    @TempDir
+    Path tempDir;
+
+    private final ImageService imageService = mock(ImageService.class);
+
+    private JournalSecurityRepositoryImpl newRepository(String name, List<UUID> sensorIds, boolean[] initiallyActive,
+                                                        ArmingStatus armingStatus, AlarmStatus alarmStatus) {
+        JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(tempDir.resolve(name));
+        for (int i = 0; i < sensorIds.size(); i++) {
+            Sensor sensor = new Sensor("Sensor " + i, SensorType.values()[i % SensorType.values().length]);
+            sensor.setSensorId(sensorIds.get(i));
+            sensor.setActive(initiallyActive[i]);
+            repository.addSensor(sensor);
+        }
+        repository.setArmingStatus(armingStatus);
+        repository.setAlarmStatus(alarmStatus);
+        return repository;
+    }
+
+    @ParameterizedTest
+    @EnumSource(ArmingStatus.class)
+    public void randomBatches_sameFinalStateAsSequentialChanges(ArmingStatus armingStatus) {
+        Random random = new Random(armingStatus.ordinal());
+        for (int trial = 0; trial < TRIALS; trial++) {
+            List<UUID> sensorIds = new ArrayList<>();
+            boolean[] initiallyActive = new boolean[SENSOR_COUNT];
+            for (int i = 0; i < SENSOR_COUNT; i++) {
+                sensorIds.add(UUID.randomUUID());
+                initiallyActive[i] = random.nextBoolean();
+            }
+            AlarmStatus alarmStatus = AlarmStatus.values()[random.nextInt(AlarmStatus.values().length)];
+            int[] sensorIndexes = new int[CHANGES_PER_BATCH];
+            boolean[] activations = new boolean[CHANGES_PER_BATCH];
+            for (int i = 0; i < CHANGES_PER_BATCH; i++) {
+                sensorIndexes[i] = random.nextInt(SENSOR_COUNT);
+                activations[i] = random.nextBoolean();
+            }
+
+            JournalSecurityRepositoryImpl sequentialRepository = newRepository("sequential" + trial, sensorIds, initiallyActive, armingStatus, alarmStatus);
+            JournalSecurityRepositoryImpl batchRepository = newRepository("batch" + trial, sensorIds, initiallyActive, armingStatus, alarmStatus);
+            SecurityService sequential = new SecurityService(sequentialRepository, imageService);
+            SecurityService batch = new SecurityService(batchRepository, imageService);
+
+            List<SensorChange> changes = new ArrayList<>();
+            for (int i = 0; i < CHANGES_PER_BATCH; i++) {
+                UUID sensorId = sensorIds.get(sensorIndexes[i]);
+                sequential.changeSensorActivationStatus(sequentialRepository.getSensor(sensorId), activations[i]);
+                changes.add(new SensorChange(batchRepository.getSensor(sensorId), activations[i]));
+            }
+            batch.changeSensorActivationStatuses(changes);
+
+            assertEquals(sequential.getAlarmStatus(), batch.getAlarmStatus());
+            assertEquals(sequentialRepository.getActiveSensorCount(), batchRepository.getActiveSensorCount());
+            for (UUID sensorId : sensorIds) {
+                assertEquals(sequentialRepository.getSensor(sensorId).getActive(), batchRepository.getSensor(sensorId).getActive());
+            }
+            sequentialRepository.close();
+            batchRepository.close();
+        }
+    }
+
+    @Test
+    public void batchOfChanges_listenersNotifiedOnce() {
+        JournalSecurityRepositoryImpl repository = newRepository("notify", List.of(UUID.randomUUID(), UUID.randomUUID()),
+                new boolean[]{false, false}, ArmingStatus.ARMED_AWAY, AlarmStatus.NO_ALARM);
+        SecurityService securityService = new SecurityService(repository, imageService);
+        StatusListener statusListener = mock(StatusListener.class);
+        securityService.addStatusListener(statusListener);
+
+        List<SensorChange> changes = new ArrayList<>();
+        repository.getSensors().forEach(s -> changes.add(new SensorChange(s, true)));
+        securityService.changeSensorActivationStatuses(changes);
+
+        verify(statusListener, times(1)).sensorStatusChanged();
+        verify(statusListener, times(1)).notify(AlarmStatus.ALARM);
+        verify(statusListener, never()).notify(AlarmStatus.PENDING_ALARM);
+        assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+        repository.close();
+    }
+}
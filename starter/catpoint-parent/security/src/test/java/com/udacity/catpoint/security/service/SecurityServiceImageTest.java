@@ -0,0 +1,164 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.CachingImageService;
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.MotionGatedImageService;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.InMemorySecurityRepositoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Tests for classifying images off the caller's thread: results applied when they arrive, stale
+ * results dropped, the image executor's queue bounded, and frames of several cameras sent as one batch.
+ */
+public class SecurityServiceImageTest {
+
+    private static final int IMAGES = 4;
+
+    //image n is the one n pixels wide; its classification waits for release(n)
+    private final CountDownLatch[] released = new CountDownLatch[IMAGES + 1];
+    private final boolean[] containsCat = new boolean[IMAGES + 1];
+    private final ImageService imageService = (image, confidenceThreshhold) -> {
+        try {
+            released[image.getWidth()].await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return containsCat[image.getWidth()];
+    };
+
+    private InMemorySecurityRepositoryImpl repository;
+    private ExecutorService imageExecutor;
+
+    @BeforeEach
+    void init() {
+        for (int i = 1; i <= IMAGES; i++) {
+            released[i] = new CountDownLatch(1);
+        }
+        repository = new InMemorySecurityRepositoryImpl();
+        repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+    }
+
+    @AfterEach
+    void close() {
+        for (int i = 1; i <= IMAGES; i++) {
+            released[i].countDown();
+        }
+        if (imageExecutor != null) {
+            imageExecutor.shutdownNow();
+        }
+    }
+
+    private SecurityService newService(int threads, int queueCapacity) {
+        imageExecutor = SecurityService.newImageExecutor(threads, queueCapacity);
+        return new SecurityService(repository, imageService, Runnable::run, imageExecutor, Runnable::run);
+    }
+
+    private static BufferedImage image(int n) {
+        return new BufferedImage(n, 1, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Test
+    public void slowImageService_callerNotBlocked_alarmSetWhenResultArrives() throws Exception {
+        SecurityService securityService = newService(1, 4);
+        containsCat[1] = true;
+
+        CompletableFuture<Boolean> result = securityService.processImage(image(1));
+        assertFalse(result.isDone());
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+
+        released[1].countDown();
+        assertTrue(result.get(10, TimeUnit.SECONDS));
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+        assertTrue(securityService.getState().cameraShowsCat());
+    }
+
+    // The newer image is classified first; the older result arriving after it must not undo it
+    @Test
+    public void olderResultArrivingLate_dropped() throws Exception {
+        SecurityService securityService = newService(2, 4);
+        containsCat[1] = true;
+        containsCat[2] = false;
+
+        CompletableFuture<Boolean> older = securityService.processImage(image(1));
+        CompletableFuture<Boolean> newer = securityService.processImage(image(2));
+        released[2].countDown();
+        assertFalse(newer.get(10, TimeUnit.SECONDS));
+        released[1].countDown();
+        assertTrue(older.get(10, TimeUnit.SECONDS));
+
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+        assertFalse(securityService.getState().cameraShowsCat());
+    }
+
+    @Test
+    public void queueFull_imageRejected() throws Exception {
+        SecurityService securityService = newService(1, 1);
+        containsCat[1] = true;
+        containsCat[2] = true;
+
+        CompletableFuture<Boolean> running = securityService.processImage(image(1));
+        CompletableFuture<Boolean> queued = securityService.processImage(image(2));
+        CompletableFuture<Boolean> rejected = securityService.processImage(image(3));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+
+        released[1].countDown();
+        released[2].countDown();
+        assertTrue(running.get(10, TimeUnit.SECONDS));
+        assertTrue(queued.get(10, TimeUnit.SECONDS));
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+    }
+
+    // Scan Picture pressed before a picture is chosen; the wrappers must hand null to the backend
+    @Test
+    public void noImageChosen_classifiedByBackendWithoutThrowing() throws Exception {
+        ImageService backend = (image, confidenceThreshhold) -> image == null;
+        SecurityService securityService = new SecurityService(repository, new MotionGatedImageService(new CachingImageService(backend)));
+
+        assertTrue(securityService.processImage(null).get(10, TimeUnit.SECONDS));
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+    }
+
+    // One batch call for all cameras; the site shows a cat if any camera does
+    @Test
+    public void batchOfCameras_oneCallAndAnyCatRaisesAlarm() throws Exception {
+        List<Integer> batchSizes = new ArrayList<>();
+        ImageService batchingService = new ImageService() {
+            @Override
+            public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+                throw new AssertionError("frames should be classified as a batch");
+            }
+
+            @Override
+            public List<Boolean> imageContainsCat(List<BufferedImage> images, float confidenceThreshhold) {
+                batchSizes.add(images.size());
+                return images.stream().map(image -> image.getWidth() == 2).collect(Collectors.toList());
+            }
+        };
+        SecurityService securityService = new SecurityService(repository, batchingService);
+
+        List<Boolean> results = securityService.processImages(List.of(image(1), image(2), image(3))).get(10, TimeUnit.SECONDS);
+        assertEquals(List.of(false, true, false), results);
+        assertEquals(List.of(3), batchSizes);
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+
+        securityService.setArmingStatus(ArmingStatus.DISARMED);
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        securityService.processImages(List.of(image(1), image(3))).get(10, TimeUnit.SECONDS);
+        assertFalse(securityService.getState().cameraShowsCat());
+        assertThrows(IllegalArgumentException.class, () -> securityService.processImages(List.of()));
+    }
+}
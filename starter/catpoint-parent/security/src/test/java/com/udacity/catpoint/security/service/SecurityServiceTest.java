@@ -10,18 +10,19 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.awt.image.BufferedImage;
-import java.util.Set;
-import java.util.stream.Stream;
+import java.util.List;
 
 
 /**
@@ -31,7 +32,8 @@ import java.util.stream.Stream;
 @ExtendWith(MockitoExtension.class)
 public class SecurityServiceTest {
 
-    @Mock
+    //real default methods, so the async adapter calls the stubbed imageContainsCat
+    @Mock(answer = Answers.CALLS_REAL_METHODS)
     private ImageService imageService;
     @Mock
     private SecurityRepository securityRepository;
@@ -42,8 +44,6 @@ public class SecurityServiceTest {
     @Mock
     private BufferedImage bufferedImage;
     @Mock
-    private Set<Sensor> sensorSet;
-    @Mock
     private StatusListener statusListener1;
     @Mock
     private StatusListener statusListener2;
@@ -170,7 +170,7 @@ public class SecurityServiceTest {
     @Test
     public void systemIsArmedHome_imageServiceIdentifiesCat_setAlarm() {
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
-        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(true);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
         securityService.processImage(bufferedImage);
         verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
     }
@@ -180,7 +180,7 @@ public class SecurityServiceTest {
     @EnumSource(value = ArmingStatus.class, names = {"DISARMED", "ARMED_AWAY"})
     public void systemIsNotArmedHome_imageServiceIdentifiesCat_doesNotSetAlarm(ArmingStatus armingStatus) {
         when(securityRepository.getArmingStatus()).thenReturn(armingStatus);
-        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(true);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
         securityService.processImage(bufferedImage);
         verify(securityRepository, never()).setAlarmStatus(AlarmStatus.ALARM);
     }
@@ -194,22 +194,16 @@ public class SecurityServiceTest {
      */
     @Test
     public void imageServiceIdentifiesNoCat_sensorsNotActive_setNoAlarm() {
-        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(false);
-        when(securityRepository.getSensors()).thenReturn(sensorSet);
-        when(sensorSet.stream()).thenReturn(Stream.of(sensor1, sensor2));
-        when(sensor1.getActive()).thenReturn(false);
-        when(sensor2.getActive()).thenReturn(false);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(false);
+        when(securityRepository.getActiveSensorCount()).thenReturn(0);
         securityService.processImage(bufferedImage);
         verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.NO_ALARM);
     }
 
     @Test
     public void imageServiceIdentifiesNoCat_sensorIsActive_doNotAdjustAlarm() {
-        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(false);
-        when(securityRepository.getSensors()).thenReturn(sensorSet);
-        when(sensorSet.stream()).thenReturn(Stream.of(sensor1, sensor2));
-        when(sensor1.getActive()).thenReturn(false);
-        when(sensor2.getActive()).thenReturn(true);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(false);
+        when(securityRepository.getActiveSensorCount()).thenReturn(1);
         securityService.processImage(bufferedImage);
         verify(securityRepository, never()).setAlarmStatus(AlarmStatus.NO_ALARM);
     }
@@ -234,11 +228,12 @@ public class SecurityServiceTest {
     @ParameterizedTest
     @EnumSource(value = ArmingStatus.class, names = {"ARMED_HOME", "ARMED_AWAY"})
     public void systemIsArmed_allSensorsResetToInactive(ArmingStatus armingStatus) {
-        when(securityService.getSensors() ).thenReturn(Set.of(sensor1, sensor2)  );
-        securityService.setArmingStatus(armingStatus);
-        verify(sensor1, times(1)).setActive(false);
-        verify(sensor2, times(1)).setActive(false);
+        when(securityRepository.resetAllSensors()).thenReturn(List.of(sensor1, sensor2));
         securityService.addStatusListener(statusListener1);
+        securityService.setArmingStatus(armingStatus);
+        verify(securityRepository, times(1)).resetAllSensors();
+        verify(securityRepository, never()).updateSensor(any());
+        verify(statusListener1, times(1)).sensorStatusChanged();
     }
 
 
@@ -251,7 +246,7 @@ public class SecurityServiceTest {
      */
     @Test
     public void systemIsArmed_cameraShowsCat_setAlarmAlarm() {
-        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(true);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
         securityService.processImage(bufferedImage);
         securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
         verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
@@ -259,7 +254,7 @@ public class SecurityServiceTest {
 
     @Test
     public void systemIsArmed_cameraShowsNoCat_doNotSetAlarmAlarm() {
-        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(false);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(false);
         securityService.processImage(bufferedImage);
         securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
         verify(securityRepository, never()).setAlarmStatus(AlarmStatus.ALARM);
@@ -296,7 +291,7 @@ public class SecurityServiceTest {
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     public void statusListenerAdded_catDetected_listenerIsNotifiedOfCatDetection(boolean catDetectedStatus) {
-        when(imageService.imageContainsCat(any(),anyFloat())).thenReturn(catDetectedStatus);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(catDetectedStatus);
         securityService.addStatusListener(statusListener1);
         securityService.addSensor(sensor1);
         securityService.processImage(bufferedImage);
@@ -305,7 +300,7 @@ public class SecurityServiceTest {
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     public void statusListenerAdded_catDetected_removedListenerIsNotNotifiedOfCatDetection(boolean catDetectedStatus) {
-        when(imageService.imageContainsCat(any(),anyFloat())).thenReturn(catDetectedStatus);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(catDetectedStatus);
         securityService.addStatusListener(statusListener1);
         securityService.addStatusListener(statusListener2);
         securityService.removeStatusListener(statusListener2);
@@ -376,7 +371,54 @@ public class SecurityServiceTest {
     }
 
 
+    // Tests for the cached state
 
+    @Test
+    public void severalSensorChanges_repositoryStatusesReadOnce() {
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_AWAY);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        securityService.changeSensorActivationStatus(sensor1, true);
+        securityService.changeSensorActivationStatus(sensor2, true);
+        verify(securityRepository, times(1)).getArmingStatus();
+        verify(securityRepository, times(1)).getAlarmStatus();
+        verify(securityRepository, times(1)).getActiveSensorCount();
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
+    @Test
+    public void stateChange_writtenThroughWithNewVersion() {
+        SecurityState before = securityService.getState();
+        securityService.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        SecurityState after = securityService.getState();
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        assertEquals(AlarmStatus.PENDING_ALARM, after.getAlarmStatus());
+        assertTrue(after.getVersion() > before.getVersion());
+    }
+
+    @Test
+    public void repositoryChangedExternally_reloadStatePicksItUp() {
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM, AlarmStatus.ALARM);
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+        long version = securityService.getState().getVersion();
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+        securityService.reloadState();
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+        assertTrue(securityService.getState().getVersion() > version);
+    }
+
+    @Test
+    public void invalidateState_nextReadGoesToRepository_cameraResultKept() {
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
+        securityService.processImage(bufferedImage);
+        long version = securityService.getState().getVersion();
+        securityService.invalidateState();
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        SecurityState reloaded = securityService.getState();
+        assertEquals(ArmingStatus.ARMED_HOME, reloaded.getArmingStatus());
+        assertTrue(reloaded.cameraShowsCat());
+        assertTrue(reloaded.getVersion() > version);
+    }
 
 }
 
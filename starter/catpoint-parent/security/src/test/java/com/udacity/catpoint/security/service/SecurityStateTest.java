@@ -0,0 +1,219 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.InMemorySecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+
+/**
+ * Unit test for the packed SecurityState and SecurityService snapshots.
+ */
+public class SecurityStateTest {
+
+    private static final int READERS = 4;
+    private static final int WRITES = 20_000;
+
+    @Test
+    public void everyCombination_packsAndUnpacksUnchanged() {
+        List<ArmingStatus> armingStatuses = new ArrayList<>(Arrays.asList(ArmingStatus.values()));
+        armingStatuses.add(null);
+        List<AlarmStatus> alarmStatuses = new ArrayList<>(Arrays.asList(AlarmStatus.values()));
+        alarmStatuses.add(null);
+        for (ArmingStatus armingStatus : armingStatuses) {
+            for (AlarmStatus alarmStatus : alarmStatuses) {
+                for (int count : new int[]{0, 1, 4, SecurityState.MAX_ACTIVE_SENSOR_COUNT}) {
+                    for (boolean cat : new boolean[]{false, true}) {
+                        long word = SecurityState.loaded(SecurityState.UNLOADED, armingStatus, alarmStatus, count);
+                        SecurityState state = new SecurityState(SecurityState.withCameraShowsCat(word, cat));
+                        assertEquals(armingStatus, state.getArmingStatus());
+                        assertEquals(alarmStatus, state.getAlarmStatus());
+                        assertEquals(count, state.getActiveSensorCount());
+                        assertEquals(count > 0, state.anySensorActive());
+                        assertEquals(cat, state.cameraShowsCat());
+                        assertTrue(state.isLoaded());
+                        assertEquals(2, state.getVersion());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void activeSensorCount_saturatesInsteadOfOverflowing() {
+        long word = SecurityState.withActiveSensorCount(SecurityState.UNLOADED, Integer.MAX_VALUE);
+        assertEquals(SecurityState.MAX_ACTIVE_SENSOR_COUNT, new SecurityState(word).getActiveSensorCount());
+        word = SecurityState.withActiveSensorCount(word, -1);
+        assertEquals(0, new SecurityState(word).getActiveSensorCount());
+        assertNull(new SecurityState(word).getArmingStatus());
+    }
+
+    @Test
+    public void everyChange_incrementsVersionAndKeepsOtherFields() {
+        long word = SecurityState.loaded(SecurityState.UNLOADED, ArmingStatus.ARMED_HOME, AlarmStatus.PENDING_ALARM, 3);
+        word = SecurityState.withCameraShowsCat(word, true);
+        word = SecurityState.withAlarmStatus(word, AlarmStatus.ALARM);
+        word = SecurityState.withArmingStatus(word, ArmingStatus.ARMED_AWAY);
+        word = SecurityState.withActiveSensorCount(word, 2);
+        SecurityState state = new SecurityState(word);
+        assertEquals(5, state.getVersion());
+        assertEquals(ArmingStatus.ARMED_AWAY, state.getArmingStatus());
+        assertEquals(AlarmStatus.ALARM, state.getAlarmStatus());
+        assertEquals(2, state.getActiveSensorCount());
+        assertTrue(state.cameraShowsCat());
+
+        SecurityState unloaded = new SecurityState(SecurityState.unloaded(word));
+        assertFalse(unloaded.isLoaded());
+        assertEquals(AlarmStatus.ALARM, unloaded.getAlarmStatus());
+        assertEquals(5, unloaded.getVersion());
+    }
+
+    @Test
+    public void snapshot_neverTouchesRepository() {
+        SecurityRepository securityRepository = mock(SecurityRepository.class);
+        SecurityService securityService = new SecurityService(securityRepository, mock(ImageService.class));
+        SecurityState snapshot = securityService.snapshot();
+        assertFalse(snapshot.isLoaded());
+        verifyNoInteractions(securityRepository);
+    }
+
+    // Readers hammering snapshot() while a writer changes the state never see versions go backwards,
+    // and the last snapshot matches the writer's final state
+    @Test
+    public void concurrentReaders_seeMonotonicConsistentSnapshots() throws InterruptedException {
+        SecurityRepository securityRepository = mock(SecurityRepository.class);
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        SecurityService securityService = new SecurityService(securityRepository, mock(ImageService.class));
+        securityService.getState();
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            Thread reader = new Thread(() -> {
+                long lastVersion = -1;
+                while (writing.get()) {
+                    SecurityState snapshot = securityService.snapshot();
+                    if (snapshot.getVersion() < lastVersion || snapshot.getArmingStatus() != ArmingStatus.ARMED_HOME) {
+                        failure.compareAndSet(null, new AssertionError("Inconsistent snapshot " + snapshot));
+                        return;
+                    }
+                    lastVersion = snapshot.getVersion();
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        AlarmStatus[] statuses = AlarmStatus.values();
+        for (int i = 0; i < WRITES; i++) {
+            securityService.setAlarmStatus(statuses[i % statuses.length]);
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        SecurityState last = securityService.snapshot();
+        assertEquals(statuses[(WRITES - 1) % statuses.length], last.getAlarmStatus());
+        assertEquals(securityService.getState().getVersion(), last.getVersion());
+        assertTrue(last.isLoaded());
+    }
+
+    //what the alarm rules guarantee between operations, whatever happened before
+    private static void assertFollowsRules(SecurityState state) {
+        if (state.getArmingStatus() == ArmingStatus.DISARMED) {
+            assertEquals(AlarmStatus.NO_ALARM, state.getAlarmStatus(), state.toString());
+        }
+        if (state.getArmingStatus() == ArmingStatus.ARMED_HOME && state.cameraShowsCat()) {
+            assertEquals(AlarmStatus.ALARM, state.getAlarmStatus(), state.toString());
+        }
+        if (state.getAlarmStatus() == AlarmStatus.PENDING_ALARM) {
+            assertTrue(state.anySensorActive(), state.toString());
+        }
+    }
+
+    // Every snapshot a reader takes while one writer arms, flips sensors and classifies cats must be
+    // the state after a whole operation: the writer saw it, and it follows the alarm rules
+    @Test
+    public void concurrentReaders_onlySeeStatesOfWholeOperations() throws InterruptedException {
+        InMemorySecurityRepositoryImpl repository = new InMemorySecurityRepositoryImpl();
+        repository.setArmingStatus(ArmingStatus.DISARMED);
+        repository.setAlarmStatus(AlarmStatus.NO_ALARM);
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Sensor sensor = new Sensor("Sensor " + i, SensorType.DOOR);
+            repository.addSensor(sensor);
+            sensors.add(sensor);
+        }
+        AtomicBoolean cat = new AtomicBoolean();
+        SecurityService securityService = new SecurityService(repository, (image, confidenceThreshhold) -> cat.get());
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+        Map<Long, String> written = new ConcurrentHashMap<>();
+        written.put(securityService.getState().getVersion(), securityService.getState().toString());
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Map<Long, String>> seen = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            Map<Long, String> readerSeen = new HashMap<>();
+            seen.add(readerSeen);
+            Thread reader = new Thread(() -> {
+                while (writing.get()) {
+                    SecurityState snapshot = securityService.snapshot();
+                    readerSeen.putIfAbsent(snapshot.getVersion(), snapshot.toString());
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        Random random = new Random(16);
+        ArmingStatus[] armingStatuses = ArmingStatus.values();
+        for (int i = 0; i < WRITES; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    securityService.setArmingStatus(armingStatuses[random.nextInt(armingStatuses.length)]);
+                    break;
+                case 1:
+                    securityService.changeSensorActivationStatus(sensors.get(random.nextInt(sensors.size())), random.nextBoolean());
+                    break;
+                default:
+                    cat.set(random.nextBoolean());
+                    securityService.processImage(image);
+                    break;
+            }
+            SecurityState state = securityService.snapshot();
+            assertFollowsRules(state);
+            written.put(state.getVersion(), state.toString());
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        for (Map<Long, String> readerSeen : seen) {
+            readerSeen.forEach((version, state) -> assertEquals(written.get(version), state, "torn snapshot"));
+        }
+    }
+}